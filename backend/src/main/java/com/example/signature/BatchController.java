@@ -0,0 +1,380 @@
+package com.example.signature;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Batch sign/verify. Uploads are sent as repeated {@code files} parts, any of which may be
+ * a ZIP archive of images, or as one ZIP archive in a raw {@code application/zip} body;
+ * items run in parallel on the {@link BatchProcessor} pool and results are streamed back in
+ * completion order.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class BatchController {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    static final String MANIFEST = "results.ndjson";
+
+    static final String ZIP = "application/zip";
+
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    private final SignatureService service;
+    private final BatchProcessor processor;
+    private final UploadSpooler spooler;
+    private final ObjectMapper mapper;
+
+    public BatchController(SignatureService service, BatchProcessor processor, UploadSpooler spooler,
+                           ObjectMapper mapper) {
+        this.service = service;
+        this.processor = processor;
+        this.spooler = spooler;
+        this.mapper = mapper;
+    }
+
+    /** Streams one JSON line per image: {@code {"index","name","valid"}} or {@code {"index","name","error"}}. */
+    @PostMapping("/verify/batch")
+    public ResponseEntity<StreamingResponseBody> verifyBatch(@RequestParam(value = "files", required = false) List<MultipartFile> files) {
+        String invalid = check(files);
+        if (invalid != null) {
+            return error(invalid);
+        }
+        return verify(new Items(files));
+    }
+
+    /** As {@link #verifyBatch(List)} for a ZIP archive sent as the raw request body. */
+    @PostMapping(value = "/verify/batch", consumes = ZIP)
+    public ResponseEntity<StreamingResponseBody> verifyBatchRaw(@RequestParam(value = "filename", required = false) String filename,
+                                                                HttpServletRequest request) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(request.getInputStream(), ZIP_MAGIC.length);
+        String invalid = checkArchive(in);
+        if (invalid != null) {
+            return error(invalid);
+        }
+        return verify(new Items(in, filename));
+    }
+
+    private ResponseEntity<StreamingResponseBody> verify(Items batch) {
+        StreamingResponseBody body = out -> {
+            try (Items items = batch) {
+                processor.run(items,
+                        item -> service.verify(item.data(), extension(item.name())),
+                        (item, valid, error) -> {
+                            Map<String, Object> line = line(item);
+                            if (error != null) {
+                                line.put("error", error instanceof UploadSpooler.TooLargeException
+                                        || error instanceof CpuStage.OverloadedException
+                                        ? error.getMessage() : "Failed to verify image");
+                            } else {
+                                line.put("valid", valid);
+                            }
+                            writeLine(out, line);
+                        });
+            } catch (UnreadableUploadException e) {
+                writeLine(out, Map.of("error", e.getMessage()));
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Streams a ZIP archive holding each signed image as soon as it is ready, followed by a
+     * {@value #MANIFEST} entry with one status line per input.
+     */
+    @PostMapping("/sign/batch")
+    public ResponseEntity<StreamingResponseBody> signBatch(@RequestParam(value = "files", required = false) List<MultipartFile> files) {
+        String invalid = check(files);
+        if (invalid != null) {
+            return error(invalid);
+        }
+        return sign(new Items(files));
+    }
+
+    /** As {@link #signBatch(List)} for a ZIP archive sent as the raw request body. */
+    @PostMapping(value = "/sign/batch", consumes = ZIP)
+    public ResponseEntity<StreamingResponseBody> signBatchRaw(@RequestParam(value = "filename", required = false) String filename,
+                                                              HttpServletRequest request) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(request.getInputStream(), ZIP_MAGIC.length);
+        String invalid = checkArchive(in);
+        if (invalid != null) {
+            return error(invalid);
+        }
+        return sign(new Items(in, filename));
+    }
+
+    private ResponseEntity<StreamingResponseBody> sign(Items batch) {
+        StreamingResponseBody body = out -> {
+            try (Items items = batch) {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                StringBuilder manifest = new StringBuilder();
+                try {
+                    processor.run(items,
+                            item -> service.sign(item.data(), extension(item.name())),
+                            (item, signed, error) -> {
+                                Map<String, Object> line = line(item);
+                                if (error != null) {
+                                    line.put("error", error instanceof IllegalArgumentException
+                                            || error instanceof UploadSpooler.TooLargeException
+                                            || error instanceof CpuStage.OverloadedException
+                                            ? error.getMessage() : "Failed to sign image");
+                                } else {
+                                    writeStored(zip, item.name(), signed);
+                                    line.put("signed", true);
+                                }
+                                manifest.append(mapper.writeValueAsString(line)).append('\n');
+                            });
+                } catch (UnreadableUploadException e) {
+                    manifest.append(mapper.writeValueAsString(Map.of("error", e.getMessage()))).append('\n');
+                }
+                writeStored(zip, MANIFEST, manifest.toString().getBytes(StandardCharsets.UTF_8));
+                zip.finish();
+                zip.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ZIP))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed.zip")
+                .body(body);
+    }
+
+    // Streaming handlers can only return streaming bodies, so errors are streamed JSON too
+    private ResponseEntity<StreamingResponseBody> error(String message) {
+        StreamingResponseBody body = out -> mapper.writeValue(out, Map.of("error", message));
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static String check(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            return "Missing files parameter";
+        }
+        if (files.stream().allMatch(MultipartFile::isEmpty)) {
+            return "Missing or empty file parameter";
+        }
+        return null;
+    }
+
+    // Peeks at the body so that anything but a ZIP archive is refused up front
+    private static String checkArchive(PushbackInputStream in) throws IOException {
+        byte[] head = in.readNBytes(ZIP_MAGIC.length);
+        in.unread(head);
+        if (head.length == 0) {
+            return "Missing or empty upload";
+        }
+        return Arrays.equals(head, ZIP_MAGIC) ? null : "Upload is not a ZIP archive";
+    }
+
+    /** An archive that could not be read to the end; items read before it are still reported. */
+    static final class UnreadableUploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnreadableUploadException(String name, IOException cause) {
+            super("Failed to read " + name, cause);
+        }
+    }
+
+    /**
+     * The items of a batch, read as the processor asks for them: ZIP entries straight off the
+     * archive stream, and parts as they are. Each item's upload is closed as soon as its
+     * result is written, so a batch holds no more uploads than it has items in flight.
+     */
+    private final class Items implements BatchProcessor.Source, AutoCloseable {
+
+        private final Iterator<MultipartFile> files;
+        private final Set<String> names = new HashSet<>();
+        private final Map<Integer, UploadSpooler.Upload> open = new HashMap<>();
+        private ZipInputStream zip;
+        private String zipName;
+        private int index;
+
+        Items(List<MultipartFile> files) {
+            this.files = files.iterator();
+        }
+
+        Items(InputStream archive, String name) {
+            this.files = Collections.emptyIterator();
+            this.zip = new ZipInputStream(archive);
+            this.zipName = name != null ? name : "upload";
+        }
+
+        @Override
+        public BatchProcessor.Item next() throws IOException {
+            while (true) {
+                if (zip != null) {
+                    ZipEntry entry;
+                    try {
+                        entry = zip.getNextEntry();
+                    } catch (IOException e) {
+                        throw new UnreadableUploadException(zipName, e);
+                    }
+                    if (entry == null) {
+                        zip.close();
+                        zip = null;
+                    } else if (!entry.isDirectory()) {
+                        try {
+                            return item(entry.getName(), spooler.spool(zip, entry.getSize()));
+                        } catch (UploadSpooler.TooLargeException e) {
+                            return failed(entry.getName(), e);
+                        } catch (IOException e) {
+                            throw new UnreadableUploadException(zipName, e);
+                        }
+                    }
+                    continue;
+                }
+                if (!files.hasNext()) {
+                    return null;
+                }
+                MultipartFile file = files.next();
+                if (file.isEmpty()) {
+                    continue;
+                }
+                if (isZip(file)) {
+                    zip = new ZipInputStream(file.getInputStream());
+                    zipName = file.getOriginalFilename();
+                    continue;
+                }
+                try {
+                    return item(file.getOriginalFilename(), spooler.spool(file));
+                } catch (UploadSpooler.TooLargeException e) {
+                    return failed(file.getOriginalFilename(), e);
+                }
+            }
+        }
+
+        @Override
+        public void release(BatchProcessor.Item item) {
+            UploadSpooler.Upload upload = open.remove(item.index());
+            if (upload != null) {
+                upload.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            open.values().forEach(UploadSpooler.Upload::close);
+            open.clear();
+            if (zip != null) {
+                zip.close();
+            }
+        }
+
+        private BatchProcessor.Item item(String name, UploadSpooler.Upload upload) {
+            open.put(index, upload);
+            return new BatchProcessor.Item(index, unique(name), upload.buffer());
+        }
+
+        private BatchProcessor.Item failed(String name, IOException failure) {
+            return new BatchProcessor.Item(index, unique(name), null, failure);
+        }
+
+        // Names become archive entries, so keep only the base name and make it unique
+        private String unique(String name) {
+            int i = index++;
+            String base = name == null ? "" : name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+            if (base.isEmpty()) {
+                base = "image-" + i;
+            }
+            String unique = names.add(base) ? base : i + "-" + base;
+            names.add(unique);
+            return unique;
+        }
+    }
+
+    private static String extension(String name) {
+        int i = name.lastIndexOf('.');
+        return i < 0 ? null : name.substring(i + 1);
+    }
+
+    private static Map<String, Object> line(BatchProcessor.Item item) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", item.index());
+        line.put("name", item.name());
+        return line;
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(mapper.writeValueAsBytes(line));
+        out.write('\n');
+        out.flush();
+    }
+
+    private static boolean isZip(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return Arrays.equals(in.readNBytes(ZIP_MAGIC.length), ZIP_MAGIC);
+        }
+    }
+
+    // Images are already compressed, so entries are stored rather than deflated
+    private static void writeStored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        putStored(zip, name, data.length, crc.getValue());
+        zip.write(data);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    // A stored entry needs its CRC and size up front. Assembling a signed image is cheap next
+    // to signing it, so it is written twice rather than buffered.
+    private static void writeStored(ZipOutputStream zip, String name, SignedImage signed) throws IOException {
+        CRC32 crc = new CRC32();
+        CheckedOutputStream checked = new CheckedOutputStream(OutputStream.nullOutputStream(), crc);
+        long[] size = new long[1];
+        signed.writeTo(new FilterOutputStream(checked) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                size[0] += len;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                size[0]++;
+            }
+        });
+        putStored(zip, name, size[0], crc.getValue());
+        signed.writeTo(zip);
+        zip.closeEntry();
+        zip.flush();
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, long size, long crc) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc);
+        zip.putNextEntry(entry);
+    }
+}
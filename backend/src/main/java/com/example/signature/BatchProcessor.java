@@ -0,0 +1,170 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the items of a batch request on a shared, fixed-size worker pool and hands each
+ * result to a sink as soon as it is ready, in completion order. A failing item is
+ * reported through the sink and never affects the others.
+ *
+ * <p>The pool bounds how many items are in flight, not how many cores they use: an item's
+ * CPU work queues for the {@link CpuStage} like that of any other request, so batches and
+ * interactive requests together never run more than {@code signature.cpu.threads} at once.
+ */
+@Component
+public class BatchProcessor implements DisposableBean {
+
+    /** One uploaded image within a batch, or the error that kept it from being read. */
+    public record Item(int index, String name, ByteBuffer data, IOException failure) {
+
+        public Item(int index, String name, ByteBuffer data) {
+            this(index, name, data, null);
+        }
+    }
+
+    /**
+     * Yields the items of a batch one at a time, as the pool is ready for them, so that only
+     * the items in flight are held in memory.
+     */
+    public interface Source {
+        /** The next item, or null when there are no more. */
+        Item next() throws IOException;
+
+        /** Called once the sink is done with {@code item}, to free what holds its data. */
+        default void release(Item item) {
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task<R> {
+        R apply(Item item) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Sink<R> {
+        /** Receives either a result or the error that replaced it. */
+        void accept(Item item, R result, Exception error) throws IOException;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int parallelism;
+    private final int queueCapacity;
+
+    public BatchProcessor(@Value("${signature.batch.threads:0}") int threads,
+                          @Value("${signature.batch.queue-capacity:256}") int queueCapacity) {
+        this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "batch-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                // When every batch request has filled the queue, the request thread does the work itself
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public <R> void run(List<Item> items, Task<R> task, Sink<R> sink) throws IOException {
+        Iterator<Item> it = items.iterator();
+        run(() -> it.hasNext() ? it.next() : null, task, sink);
+    }
+
+    /**
+     * Runs the items of {@code source}, pulling the next one only when a slot frees up. If the
+     * source fails, the items already in flight still reach the sink before the failure is
+     * rethrown.
+     */
+    public <R> void run(Source source, Task<R> task, Sink<R> sink) throws IOException {
+        CompletionService<Outcome<R>> completion = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        boolean more = true;
+        IOException failure = null;
+        while (true) {
+            // Keep at most one pool's worth of this request's items in flight so a large batch
+            // cannot monopolise the queue, nor hold more than that many uploads at once
+            while (more && inFlight < parallelism) {
+                Item next;
+                try {
+                    next = source.next();
+                } catch (IOException e) {
+                    failure = e;
+                    next = null;
+                }
+                if (next == null) {
+                    more = false;
+                    break;
+                }
+                Item item = next;
+                completion.submit(() -> {
+                    if (item.failure() != null) {
+                        return new Outcome<>(item, null, item.failure());
+                    }
+                    try {
+                        return new Outcome<>(item, task.apply(item), null);
+                    } catch (Exception e) {
+                        return new Outcome<>(item, null, e);
+                    }
+                });
+                inFlight++;
+            }
+            if (inFlight == 0) {
+                break;
+            }
+            Outcome<R> outcome = take(completion);
+            inFlight--;
+            try {
+                sink.accept(outcome.item(), outcome.result(), outcome.error());
+            } finally {
+                source.release(outcome.item());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static <R> Outcome<R> take(CompletionService<Outcome<R>> completion) throws IOException {
+        try {
+            Future<Outcome<R>> next = completion.take();
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch item failed", e.getCause());
+        }
+    }
+
+    private record Outcome<R>(Item item, R result, Exception error) {
+    }
+}
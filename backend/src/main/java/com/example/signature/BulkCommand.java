@@ -0,0 +1,127 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.stereotype.Component;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@code bulk} command line, run by {@link SignatureApplication} without a web server:
+ *
+ * <pre>
+ * java -jar backend.jar bulk sign SOURCE TARGET [--threads=N] [--manifest=FILE]
+ * java -jar backend.jar bulk verify SOURCE [--threads=N] [--manifest=FILE]
+ * </pre>
+ *
+ * Signs with the key from {@link KeyConfig}, as the server would. The manifest defaults to
+ * {@code TARGET/.bulk-manifest} for signing and {@code SOURCE/.bulk-verify-manifest} for
+ * verifying; rerunning the same command resumes from it, and a manifest from another source is
+ * refused. Exits with 2 on a usage error or such a manifest, 1 when any file failed or did not
+ * verify, and 0 otherwise.
+ */
+@Component
+public class BulkCommand implements ApplicationRunner, ExitCodeGenerator {
+
+    static final String COMMAND = "bulk";
+
+    private static final String USAGE = """
+            Usage: bulk sign SOURCE TARGET [--threads=N] [--manifest=FILE]
+                   bulk verify SOURCE [--threads=N] [--manifest=FILE]""";
+
+    private final SignatureService service;
+    private final PrintStream out;
+    private int exitCode;
+
+    @Autowired
+    public BulkCommand(SignatureService service) {
+        this(service, System.out);
+    }
+
+    BulkCommand(SignatureService service, PrintStream out) {
+        this.service = service;
+        this.out = out;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<String> command = args.getNonOptionArgs();
+        if (command.isEmpty() || !COMMAND.equals(command.get(0))) {
+            return;
+        }
+        BulkRun.Mode mode = command.size() > 1 ? mode(command.get(1)) : null;
+        int expected = mode == BulkRun.Mode.SIGN ? 4 : 3;
+        if (mode == null || command.size() != expected) {
+            out.println(USAGE);
+            exitCode = 2;
+            return;
+        }
+        Path source = Path.of(command.get(2));
+        if (!Files.isDirectory(source)) {
+            out.println(source + " is not a directory");
+            exitCode = 2;
+            return;
+        }
+        int threads;
+        try {
+            threads = args.containsOption("threads") ? Integer.parseInt(args.getOptionValues("threads").get(0)) : 0;
+        } catch (NumberFormatException e) {
+            out.println(USAGE);
+            exitCode = 2;
+            return;
+        }
+        Path target = mode == BulkRun.Mode.SIGN ? Path.of(command.get(3)) : null;
+        Path manifest = args.containsOption("manifest") ? Path.of(args.getOptionValues("manifest").get(0))
+                : mode == BulkRun.Mode.SIGN ? target.resolve(".bulk-manifest") : source.resolve(".bulk-verify-manifest");
+
+        BulkRun.Summary summary;
+        try {
+            summary = new BulkRun(service, mode, source, target, manifest, threads).run();
+        } catch (BulkRun.ManifestMismatchException e) {
+            out.println(e.getMessage());
+            exitCode = 2;
+            return;
+        }
+        print(summary, manifest);
+        boolean failed = summary.count(BulkRun.Status.FAILED) > 0
+                || (mode == BulkRun.Mode.VERIFY
+                        && summary.count(BulkRun.Status.INVALID) + summary.count(BulkRun.Status.REVOKED) > 0);
+        exitCode = failed ? 1 : 0;
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    private static BulkRun.Mode mode(String name) {
+        return switch (name) {
+            case "sign" -> BulkRun.Mode.SIGN;
+            case "verify" -> BulkRun.Mode.VERIFY;
+            default -> null;
+        };
+    }
+
+    private void print(BulkRun.Summary summary, Path manifest) {
+        double seconds = summary.nanos() / 1e9;
+        out.printf(Locale.ROOT, "%d files in %.1f s: %.1f files/s, %.1f MB/s%n", summary.processed(), seconds,
+                summary.processed() / seconds, summary.bytes() / 1e6 / seconds);
+        summary.counts().forEach((status, count) -> out.printf(Locale.ROOT, "  %-12s %d%n", status.token(), count));
+        if (summary.resumed() > 0) {
+            out.printf(Locale.ROOT, "  %-12s %d%n", "resumed", summary.resumed());
+        }
+        if (summary.skipped() > 0) {
+            out.printf(Locale.ROOT, "  %-12s %d%n", "not images", summary.skipped());
+        }
+        for (String error : summary.errors()) {
+            out.println("  error: " + error);
+        }
+        out.println("Manifest: " + manifest.toAbsolutePath().normalize());
+    }
+}
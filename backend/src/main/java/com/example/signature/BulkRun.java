@@ -0,0 +1,293 @@
+package com.example.signature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Signs or verifies every JPEG and PNG under a directory. Files are memory-mapped and processed
+ * on one thread per core; signed copies go to the same relative path under the target directory,
+ * written to a temp file and renamed into place, so a target file is either absent or complete.
+ *
+ * <p>Progress is kept in a manifest with one {@code status<TAB>path[<TAB>detail]} line per
+ * finished file, appended after its output is in place. A rerun skips every file listed with a
+ * status other than {@code failed}, so an interrupted run resumes where it stopped. Paths are
+ * relative, so the manifest starts with a {@code #bulk<TAB>mode<TAB>source} header, and a run
+ * over a different source or in the other mode refuses to resume from it.
+ */
+final class BulkRun {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkRun.class);
+
+    enum Mode {
+        SIGN, VERIFY
+    }
+
+    enum Status {
+        SIGNED, VALID, INVALID, REVOKED, UNSIGNED, UNSUPPORTED, FAILED;
+
+        String token() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** What a run did; {@code resumed} files were already in the manifest, {@code skipped} are not images. */
+    record Summary(Map<Status, Long> counts, long resumed, long skipped, long bytes, long nanos, List<String> errors) {
+
+        long processed() {
+            return counts.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        long count(Status status) {
+            return counts.getOrDefault(status, 0L);
+        }
+    }
+
+    /** The manifest was written by a run over another source, or in the other mode. */
+    static final class ManifestMismatchException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ManifestMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    private static final int MAX_ERRORS = 20;
+    private static final String HEADER = "#bulk";
+
+    private final SignatureService service;
+    private final Mode mode;
+    private final Path source;
+    private final Path target;
+    private final Path manifest;
+    private final int threads;
+    private final Map<Status, LongAdder> counts = new EnumMap<>(Status.class);
+    private final LongAdder bytes = new LongAdder();
+    private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    BulkRun(SignatureService service, Mode mode, Path source, Path target, Path manifest, int threads) {
+        this.service = service;
+        this.mode = mode;
+        this.source = source.toAbsolutePath().normalize();
+        this.target = target == null ? null : target.toAbsolutePath().normalize();
+        this.manifest = manifest.toAbsolutePath().normalize();
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        for (Status status : Status.values()) {
+            counts.put(status, new LongAdder());
+        }
+    }
+
+    Summary run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Set<String> done = readManifest();
+        long resumed = 0;
+        long skipped = 0;
+        Files.createDirectories(manifest.getParent());
+        // Workers are CPU workers, so the service runs their CPU stages in place, and background
+        // threads, so a file waits for decode memory instead of failing
+        ExecutorService workers = Executors.newFixedThreadPool(threads, MemoryBudget.backgroundThreads(CpuStage.workerThreads("bulk-")));
+        // Bounds the files in flight, so a huge tree is walked as it is processed, not listed up front
+        Semaphore inFlight = new Semaphore(threads * 2);
+        try (BufferedWriter out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             Stream<Path> files = Files.walk(source)) {
+            if (Files.size(manifest) == 0) {
+                out.write(header());
+                out.newLine();
+                out.flush();
+            } else if (torn(manifest)) {
+                // Finish the torn line so the next record starts on its own
+                out.newLine();
+            }
+            Iterable<Path> walk = files::iterator;
+            for (Path file : walk) {
+                if (!Files.isRegularFile(file) || file.equals(manifest) || (target != null && file.startsWith(target))) {
+                    continue;
+                }
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (dot < 0 || ImageFormat.fromName(name.substring(dot + 1)) == null) {
+                    skipped++;
+                    continue;
+                }
+                String path = source.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (done.contains(path)) {
+                    resumed++;
+                    continue;
+                }
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        process(file, path, name.substring(dot + 1), out);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+        Map<Status, Long> totals = new EnumMap<>(Status.class);
+        counts.forEach((status, count) -> {
+            if (count.sum() > 0) {
+                totals.put(status, count.sum());
+            }
+        });
+        return new Summary(totals, resumed, skipped, bytes.sum(), System.nanoTime() - start, List.copyOf(errors));
+    }
+
+    private void process(Path file, String path, String extension, BufferedWriter out) {
+        Status status;
+        String detail = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + size + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            bytes.add(size);
+            if (mode == Mode.SIGN) {
+                status = sign(data, extension, target.resolve(path));
+            } else {
+                VerificationCache.Result result = service.verifyResult(data, extension);
+                status = switch (result.outcome()) {
+                    case VALID -> Status.VALID;
+                    case INVALID -> Status.INVALID;
+                    case REVOKED -> Status.REVOKED;
+                    case NO_SIGNATURE -> Status.UNSIGNED;
+                    case UNSUPPORTED -> Status.UNSUPPORTED;
+                };
+                if (!result.tampered().isEmpty()) {
+                    detail = "tampered rows " + result.tampered().stream()
+                            .map(region -> region.fromRow() + "-" + region.toRow())
+                            .collect(Collectors.joining(","));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            status = Status.UNSUPPORTED;
+            detail = e.getMessage();
+        } catch (Exception e) {
+            status = Status.FAILED;
+            detail = e.toString();
+            log.warn("{}: {}", path, e.toString());
+            if (errorCount.incrementAndGet() <= MAX_ERRORS) {
+                errors.add(path + ": " + e);
+            }
+        }
+        counts.get(status).increment();
+        record(out, status, path, detail);
+    }
+
+    private Status sign(ByteBuffer data, String extension, Path output) throws Exception {
+        SignedImage signed = service.sign(data, extension);
+        Path dir = Files.createDirectories(output.getParent());
+        Path part = Files.createTempFile(dir, "." + output.getFileName(), ".part");
+        try {
+            try (OutputStream stream = Files.newOutputStream(part)) {
+                signed.writeTo(stream);
+            }
+            Files.move(part, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+        return Status.SIGNED;
+    }
+
+    // Only after the output is in place, so a listed file never needs doing again
+    private static void record(BufferedWriter out, Status status, String path, String detail) {
+        String line = status.token() + '\t' + path + (detail == null ? "" : '\t' + detail.replace('\n', ' ').replace('\t', ' '));
+        synchronized (out) {
+            try {
+                out.write(line);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                log.warn("Could not record {} in the manifest: {}", path, e.toString());
+            }
+        }
+    }
+
+    private String header() {
+        return HEADER + '\t' + mode.name().toLowerCase(Locale.ROOT) + '\t' + source;
+    }
+
+    // Paths already finished; a torn last line from an interrupted run has no status and is ignored
+    private Set<String> readManifest() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.exists(manifest)) {
+            return done;
+        }
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        if (!lines.isEmpty() && !lines.get(0).equals(header())) {
+            String[] recorded = lines.get(0).split("\t", 3);
+            String owner = recorded.length == 3 && recorded[0].equals(HEADER)
+                    ? recorded[1] + " of " + recorded[2] : "an unknown run";
+            throw new ManifestMismatchException("Manifest " + manifest + " belongs to " + owner + ", not "
+                    + mode.name().toLowerCase(Locale.ROOT) + " of " + source
+                    + "; pass another --manifest or delete it to start over");
+        }
+        for (String line : lines) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length < 2) {
+                continue;
+            }
+            Status status = parse(fields[0]);
+            if (status == Status.FAILED) {
+                done.remove(fields[1]);
+            } else if (status != null) {
+                done.add(fields[1]);
+            }
+        }
+        return done;
+    }
+
+    private static boolean torn(Path manifest) throws IOException {
+        try (FileChannel channel = FileChannel.open(manifest, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private static Status parse(String token) {
+        for (Status status : Status.values()) {
+            if (status.token().equals(token)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
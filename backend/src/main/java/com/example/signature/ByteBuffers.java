@@ -0,0 +1,139 @@
+package com.example.signature;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Helpers for image data held in a {@link ByteBuffer}, which may be a wrapped array or a
+ * memory-mapped spool file. Buffers are always addressed absolutely from index 0 to
+ * their limit, so one buffer can be shared by several readers.
+ */
+final class ByteBuffers {
+
+    private static final int COPY_CHUNK = 64 * 1024;
+
+    private ByteBuffers() {
+    }
+
+    /** A big-endian view of {@code data} spanning its position to its limit, re-indexed from 0. */
+    static ByteBuffer view(ByteBuffer data) {
+        return data.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    static boolean startsWith(ByteBuffer data, int from, int end, byte[] prefix) {
+        if (end - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void write(ByteBuffer data, int from, int length, OutputStream out) throws IOException {
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + from, length);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(COPY_CHUNK, length)];
+        for (int done = 0; done < length; ) {
+            int n = Math.min(chunk.length, length - done);
+            data.get(from + done, chunk, 0, n);
+            out.write(chunk, 0, n);
+            done += n;
+        }
+    }
+
+    static byte[] toArray(ByteBuffer data) {
+        byte[] copy = new byte[data.limit()];
+        data.get(0, copy);
+        return copy;
+    }
+
+    static InputStream inputStream(ByteBuffer data) {
+        return new InputStream() {
+            private int pos;
+
+            @Override
+            public int read() {
+                return pos < data.limit() ? data.get(pos++) & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                int n = Math.min(len, data.limit() - pos);
+                if (n <= 0) {
+                    return -1;
+                }
+                data.get(pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(0, Math.min(n, data.limit() - pos));
+                pos += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return data.limit() - pos;
+            }
+        };
+    }
+
+    /**
+     * Random-access image input straight over the buffer. Unlike wrapping an InputStream
+     * with {@code ImageIO.createImageInputStream}, nothing is cached to heap or disk.
+     */
+    static final class ImageInput extends ImageInputStreamImpl {
+
+        private final ByteBuffer data;
+
+        ImageInput(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= data.limit()) {
+                return -1;
+            }
+            return data.get((int) streamPos++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            int n = (int) Math.min(len, data.limit() - streamPos);
+            if (n <= 0) {
+                return -1;
+            }
+            data.get((int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return data.limit();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Core-sized executor for the CPU-bound work of a request (decode, hash, RSA). Request
+ * threads, which may be virtual, only do I/O and wait here; once the bounded queue is full
+ * new work is refused with {@link OverloadedException} instead of piling up. A fork-join
+ * pool of the same size spreads the tiles of one image's digest over the cores.
+ */
+@Component
+public class CpuStage implements DisposableBean {
+
+    /** Thrown when the queue is full; the client should retry after {@link #retryAfterSeconds()}. */
+    public static final class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int retryAfterSeconds;
+
+        OverloadedException(int retryAfterSeconds) {
+            super("Server busy, retry later");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int retryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    // Set on threads that are themselves a bounded CPU pool, so their work runs in place
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    private final ThreadPoolExecutor executor;
+    private final ForkJoinPool tiles;
+    private final int threads;
+    private final int queueCapacity;
+    private final int retryAfterSeconds;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CpuStage(@Value("${signature.cpu.threads:0}") int threads,
+                    @Value("${signature.cpu.queue-capacity:64}") int queueCapacity,
+                    @Value("${signature.cpu.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), workerThreads("cpu-"), new ThreadPoolExecutor.AbortPolicy());
+        this.tiles = new ForkJoinPool(this.threads);
+    }
+
+    /**
+     * Daemon threads marked as CPU workers. Work submitted to this stage from such a thread
+     * runs directly on it, which also keeps a worker from waiting on its own queue.
+     */
+    static ThreadFactory workerThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(() -> {
+                WORKER.set(true);
+                r.run();
+            }, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** Runs {@code task} on the stage and waits for its result. */
+    public <T> T call(Callable<T> task) throws Exception {
+        if (WORKER.get()) {
+            return task.call();
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new OverloadedException(retryAfterSeconds);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Where the tiles of a {@link TileDigest} are hashed. */
+    ForkJoinPool tiles() {
+        return tiles;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    public int retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public int active() {
+        return executor.getActiveCount();
+    }
+
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        tiles.shutdownNow();
+    }
+}
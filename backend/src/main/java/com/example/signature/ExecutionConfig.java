@@ -0,0 +1,88 @@
+package com.example.signature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional virtual-thread request execution ({@code signature.threads.virtual=true}, Java 21+).
+ * Tomcat request handling and async response streaming then run on virtual threads, which
+ * only block on upload/response I/O and on {@link CpuStage}; the CPU work itself stays on
+ * the core-sized pool. On older JVMs the setting is ignored and platform threads are used.
+ *
+ * <p>Also sets how long an async response may stream, {@code signature.batch.timeout-ms}:
+ * batch responses run for as long as their items take, far past the container's default.
+ * The virtual-thread executor is shut down with the context.
+ */
+@Configuration
+public class ExecutionConfig implements WebMvcConfigurer, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    private final ExecutorService virtualThreads;
+    private final long asyncTimeoutMillis;
+
+    @Autowired
+    public ExecutionConfig(@Value("${signature.threads.virtual:false}") boolean virtual,
+                           @Value("${signature.batch.timeout-ms:3600000}") long asyncTimeoutMillis) {
+        this(virtual ? newVirtualThreadPerTaskExecutor() : null, asyncTimeoutMillis);
+        if (virtual && virtualThreads == null) {
+            log.warn("signature.threads.virtual requires Java 21+, running on {}; using platform threads",
+                    Runtime.version().feature());
+        }
+    }
+
+    ExecutionConfig(ExecutorService virtualThreads, long asyncTimeoutMillis) {
+        this.virtualThreads = virtualThreads;
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
+    /** True if requests are actually running on virtual threads. */
+    public boolean virtualThreads() {
+        return virtualThreads != null;
+    }
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        return handler -> {
+            if (virtualThreads != null) {
+                handler.setExecutor(virtualThreads);
+            }
+        };
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncTimeoutMillis);
+        if (virtualThreads != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreads));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (virtualThreads != null) {
+            virtualThreads.shutdownNow();
+        }
+    }
+
+    // Looked up reflectively so the code still compiles for Java 17
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -1,14 +1,97 @@
 package com.example.signature;
 
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
 public class HealthController {
+
+    private final ExecutionConfig execution;
+    private final CpuStage cpu;
+    private final MemoryBudget memory;
+    private final BatchProcessor batch;
+    private final VerificationCache cache;
+    private final SignJobs jobs;
+    private final ApplicationAvailability availability;
+
+    public HealthController(ExecutionConfig execution, CpuStage cpu, MemoryBudget memory, BatchProcessor batch,
+                            VerificationCache cache, SignJobs jobs, ApplicationAvailability availability) {
+        this.execution = execution;
+        this.cpu = cpu;
+        this.memory = memory;
+        this.batch = batch;
+        this.cache = cache;
+        this.jobs = jobs;
+        this.availability = availability;
+    }
+
+    /** {@code 503} until startup, including the {@link StartupWarmup}, has finished. */
     @GetMapping("/health")
-    public Map<String, String> health() {
-        return Map.of("status", "UP");
+    public ResponseEntity<Map<String, String>> health() {
+        if (availability.getReadinessState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("status", "STARTING"));
+        }
+        return ResponseEntity.ok(Map.of("status", "UP"));
+    }
+
+    /** The concurrency limits in effect, with the current load against them. */
+    @GetMapping("/health/limits")
+    public Map<String, Object> limits() {
+        Map<String, Object> cpuStage = new LinkedHashMap<>();
+        cpuStage.put("threads", cpu.threads());
+        cpuStage.put("queueCapacity", cpu.queueCapacity());
+        cpuStage.put("active", cpu.active());
+        cpuStage.put("queued", cpu.queued());
+        cpuStage.put("rejected", cpu.rejected());
+        cpuStage.put("retryAfterSeconds", cpu.retryAfterSeconds());
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("virtualThreads", execution.virtualThreads());
+        body.put("cpu", cpuStage);
+
+        Map<String, Object> budget = new LinkedHashMap<>();
+        budget.put("budgetBytes", memory.budgetBytes());
+        budget.put("reservedBytes", memory.reservedBytes());
+        budget.put("waiting", memory.waiting());
+        budget.put("rejected", memory.rejected());
+        budget.put("maxPixels", memory.maxPixels());
+        budget.put("maxDimension", memory.maxDimension());
+        budget.put("queueTimeoutMs", memory.queueTimeoutMillis());
+        body.put("memory", budget);
+        body.put("batch", Map.of("threads", batch.parallelism(), "queueCapacity", batch.queueCapacity()));
+
+        Map<String, Object> jobPool = new LinkedHashMap<>();
+        jobPool.put("threads", jobs.threads());
+        jobPool.put("queueCapacity", jobs.queueCapacity());
+        jobPool.put("active", jobs.active());
+        jobPool.put("queued", jobs.queued());
+        jobPool.put("stored", jobs.stored());
+        jobPool.put("storedBytes", jobs.storedBytes());
+        body.put("jobs", jobPool);
+        return body;
+    }
+
+    /** Verification cache occupancy and hit/miss counts since startup. */
+    @GetMapping("/health/cache")
+    public Map<String, Object> cache() {
+        long hits = cache.hits();
+        long misses = cache.misses();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("enabled", cache.enabled());
+        body.put("size", cache.size());
+        body.put("maxEntries", cache.maxEntries());
+        body.put("ttlSeconds", cache.ttlSeconds());
+        body.put("hits", hits);
+        body.put("misses", misses);
+        body.put("evictions", cache.evictions());
+        body.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return body;
     }
 }
@@ -0,0 +1,142 @@
+package com.example.signature;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Per-request view of an uploaded image. The pixels are decoded at most once and shared
+ * by every stage (digest, embed) that needs them; header fields are read without decoding.
+ */
+final class ImageContext {
+
+    private final ByteBuffer data;
+    private final ImageFormat format;
+    private BufferedImage image;
+    private ImageTypeSpecifier imageType;
+    private int width;
+    private int height;
+
+    ImageContext(byte[] data, ImageFormat format) {
+        this(ByteBuffer.wrap(data), format);
+    }
+
+    ImageContext(ByteBuffer data, ImageFormat format) {
+        this.data = ByteBuffers.view(data);
+        this.format = format;
+    }
+
+    /** The encoded image, indexed from 0 to its limit. */
+    ByteBuffer data() {
+        return data;
+    }
+
+    ImageFormat format() {
+        return format;
+    }
+
+    boolean isJpeg() {
+        return format == ImageFormat.JPEG;
+    }
+
+    boolean isPng() {
+        return format == ImageFormat.PNG;
+    }
+
+    BufferedImage image() throws IOException {
+        if (image == null) {
+            ImageReader reader = openReader();
+            try {
+                image = reader.read(0);
+            } finally {
+                release(reader);
+            }
+        }
+        return image;
+    }
+
+    Raster raster() throws IOException {
+        return image().getRaster();
+    }
+
+    int width() throws IOException {
+        readHeader();
+        return width;
+    }
+
+    int height() throws IOException {
+        readHeader();
+        return height;
+    }
+
+    /** The destination type the reader decodes into, i.e. the layout {@link #raster()} will have. */
+    ImageTypeSpecifier imageType() throws IOException {
+        readHeader();
+        return imageType;
+    }
+
+    /** Bytes of one decoded raster row. */
+    long rowBytes() throws IOException {
+        SampleModel row = imageType().getSampleModel(width, 1);
+        long elements = row.createDataBuffer().getSize();
+        return elements * DataBuffer.getDataTypeSize(row.getDataType()) / 8;
+    }
+
+    /** Estimated size of the fully decoded raster, from the header alone. */
+    long rasterBytes() throws IOException {
+        return rowBytes() * height();
+    }
+
+    /** Opens a reader positioned on this image. Callers must {@link #release(ImageReader)} it. */
+    ImageReader openReader() throws IOException {
+        ImageInputStream in = new ByteBuffers.ImageInput(data);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            in.close();
+            throw new IllegalArgumentException("Invalid image data");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    static void release(ImageReader reader) throws IOException {
+        Object input = reader.getInput();
+        reader.dispose();
+        if (input instanceof ImageInputStream in) {
+            in.close();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        if (imageType != null) {
+            return;
+        }
+        if (image != null) {
+            width = image.getWidth();
+            height = image.getHeight();
+            imageType = new ImageTypeSpecifier(image);
+            return;
+        }
+        ImageReader reader = openReader();
+        try {
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            if (types == null || !types.hasNext()) {
+                throw new IllegalArgumentException("Invalid image data");
+            }
+            imageType = types.next();
+        } finally {
+            release(reader);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.signature;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Image formats the service can sign, identified by content rather than file name.
+ */
+public enum ImageFormat {
+
+    JPEG("jpg", "image/jpeg", new byte[] {(byte) 0xff, (byte) 0xd8, (byte) 0xff}),
+    PNG("png", "image/png", PngChunks.SIGNATURE);
+
+    private final String extension;
+    private final String mediaType;
+    private final byte[] magic;
+
+    ImageFormat(String extension, String mediaType, byte[] magic) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+        this.magic = magic;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    /** Detects the format from the leading magic bytes, or returns null if unrecognised. */
+    public static ImageFormat sniff(byte[] data) {
+        return sniff(ByteBuffer.wrap(data));
+    }
+
+    /** Detects the format from the bytes at the start of {@code data}, or returns null if unrecognised. */
+    public static ImageFormat sniff(ByteBuffer data) {
+        for (ImageFormat format : values()) {
+            if (format.matches(data)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /** Maps a file extension or format name such as "jpeg" to a format, or returns null. */
+    public static ImageFormat fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        return switch (name.toLowerCase()) {
+            case "jpg", "jpeg" -> JPEG;
+            case "png" -> PNG;
+            default -> null;
+        };
+    }
+
+    /** The sniffed format, falling back to the declared name when the content is unrecognised. */
+    public static ImageFormat detect(byte[] data, String declared) {
+        return detect(ByteBuffer.wrap(data), declared);
+    }
+
+    public static ImageFormat detect(ByteBuffer data, String declared) {
+        ImageFormat sniffed = sniff(data);
+        return sniffed != null ? sniffed : fromName(declared);
+    }
+
+    private boolean matches(ByteBuffer data) {
+        return ByteBuffers.startsWith(data, 0, data.limit(), magic);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.signature;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dimensions and sample layout of an image, read straight from the PNG {@code IHDR} chunk or
+ * the JPEG {@code SOFn} segment. Nothing is decoded and no ImageIO reader is created, so an
+ * upload can be sized, and refused, before any decoder allocates for it.
+ */
+record ImageHeader(int width, int height, int samples, int bitsPerSample) {
+
+    private static final int PNG_IHDR = PngChunks.type("IHDR");
+
+    private static final int MARKER_SOI = 0xd8;
+    private static final int MARKER_EOI = 0xd9;
+    private static final int MARKER_SOS = 0xda;
+
+    long pixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * Bytes of the decoded raster, with rows packed as the JDK and TwelveMonkeys readers lay
+     * them out: sub-byte samples share bytes, 16-bit samples take two.
+     */
+    long rasterBytes() {
+        return ((long) width * samples * bitsPerSample + 7) / 8 * height;
+    }
+
+    /** Reads the header of {@code data}; throws {@link IllegalArgumentException} if there is none. */
+    static ImageHeader read(ByteBuffer data, ImageFormat format) {
+        ImageHeader header = format == ImageFormat.PNG ? png(data) : jpeg(data);
+        if (header == null || header.width() <= 0 || header.height() <= 0) {
+            throw new IllegalArgumentException("Invalid image data");
+        }
+        return header;
+    }
+
+    private static ImageHeader png(ByteBuffer png) {
+        // IHDR must be the first chunk: width, height, bit depth, colour type
+        if (png.limit() < 8 + 8 + 13 || PngChunks.readInt(png, 12) != PNG_IHDR) {
+            return null;
+        }
+        int width = PngChunks.readInt(png, 16);
+        int height = PngChunks.readInt(png, 20);
+        int bitDepth = png.get(24) & 0xff;
+        int samples = switch (png.get(25) & 0xff) {
+            case 0, 3 -> 1; // gray, palette index
+            case 2 -> 3;
+            case 4 -> 2;
+            case 6 -> 4;
+            default -> 0;
+        };
+        return samples == 0 ? null : new ImageHeader(width, height, samples, bitDepth);
+    }
+
+    private static ImageHeader jpeg(ByteBuffer jpeg) {
+        if (jpeg.limit() < 4 || (jpeg.get(0) & 0xff) != 0xff || (jpeg.get(1) & 0xff) != MARKER_SOI) {
+            return null;
+        }
+        int pos = 2;
+        while (pos + 4 <= jpeg.limit()) {
+            if ((jpeg.get(pos) & 0xff) != 0xff) {
+                return null;
+            }
+            int marker = jpeg.get(pos + 1) & 0xff;
+            if (marker == 0xff) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null; // the frame header precedes the first scan
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                pos += 2;
+                continue;
+            }
+            int length = (jpeg.get(pos + 2) & 0xff) << 8 | (jpeg.get(pos + 3) & 0xff);
+            if (length < 2 || pos + 2 + length > jpeg.limit()) {
+                return null;
+            }
+            // SOF0 to SOF15, except DHT (c4), JPG (c8) and DAC (cc)
+            if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                if (length < 8) {
+                    return null;
+                }
+                int precision = jpeg.get(pos + 4) & 0xff;
+                int height = (jpeg.get(pos + 5) & 0xff) << 8 | (jpeg.get(pos + 6) & 0xff);
+                int width = (jpeg.get(pos + 7) & 0xff) << 8 | (jpeg.get(pos + 8) & 0xff);
+                int components = jpeg.get(pos + 9) & 0xff;
+                return new ImageHeader(width, height, components, precision > 8 ? 16 : 8);
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.signature;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Asynchronous signing: submit returns {@code 202} with a job id at once, the status is
+ * polled, and the signed image is downloaded once the job is done.
+ */
+@RestController
+@RequestMapping("/api/v1/jobs")
+public class JobController {
+
+    private final SignJobs jobs;
+
+    public JobController(SignJobs jobs) {
+        this.jobs = jobs;
+    }
+
+    @PostMapping("/sign")
+    public ResponseEntity<?> submit(@RequestParam(value = "file", required = false) MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Missing or empty file parameter"));
+        }
+        try {
+            return accepted(jobs.submit(file));
+        } catch (Exception e) {
+            return submitError(e);
+        }
+    }
+
+    /** Submits a raw request body; {@code filename} only matters when the content is not recognised. */
+    @PostMapping(value = "/sign", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> submitRaw(@RequestParam(value = "filename", required = false) String filename,
+                                       HttpServletRequest request) {
+        try {
+            return accepted(jobs.submit(request.getInputStream(), request.getContentLengthLong(), filename));
+        } catch (Exception e) {
+            return submitError(e);
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id) {
+        SignJobs.Job job = jobs.get(id);
+        if (job == null) {
+            return notFound();
+        }
+        return ResponseEntity.ok(describe(job));
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> result(@PathVariable String id) throws IOException {
+        SignJobs.Job job = jobs.get(id);
+        if (job == null) {
+            return notFound();
+        }
+        if (job.status() != SignJobs.Status.DONE) {
+            Map<String, Object> body = describe(job);
+            body.put("error", job.status() == SignJobs.Status.FAILED ? "Job failed" : "Job not finished");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+        }
+        InputStream in;
+        try {
+            in = Files.newInputStream(jobs.result(job));
+        } catch (NoSuchFileException e) {
+            // Expired between the lookup and the open
+            return notFound();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(job.format().mediaType()))
+                .contentLength(job.resultBytes())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.filename())
+                .body(new InputStreamResource(in));
+    }
+
+    private ResponseEntity<Map<String, Object>> accepted(SignJobs.Job job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/jobs/" + job.id()))
+                .body(describe(job));
+    }
+
+    private Map<String, Object> describe(SignJobs.Job job) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", job.id());
+        body.put("status", job.status().name().toLowerCase(Locale.ROOT));
+        body.put("format", job.format().extension());
+        body.put("submittedAt", job.submittedAt().toString());
+        if (job.finishedAt() != null) {
+            body.put("finishedAt", job.finishedAt().toString());
+            body.put("expiresAt", jobs.expiresAt(job).toString());
+        }
+        if (job.status() == SignJobs.Status.DONE) {
+            body.put("size", job.resultBytes());
+            body.put("result", "/api/v1/jobs/" + job.id() + "/result");
+        }
+        if (job.error() != null) {
+            body.put("error", job.error());
+        }
+        return body;
+    }
+
+    private static ResponseEntity<Map<String, Object>> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "Unknown or expired job"));
+    }
+
+    private static ResponseEntity<?> submitError(Exception e) {
+        if (e instanceof CpuStage.OverloadedException overloaded) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.retryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage()));
+        }
+        if (e instanceof IllegalArgumentException) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        }
+        if (e instanceof UploadSpooler.TooLargeException) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Failed to submit job"));
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.signature;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/** Publishes the trusted public keys so others can check signatures offline. */
+@RestController
+public class JwksController {
+
+    private final KeyRing keys;
+
+    public JwksController(KeyRing keys) {
+        this.keys = keys;
+    }
+
+    @GetMapping({"/.well-known/jwks.json", "/api/v1/keys"})
+    public Map<String, Object> jwks() {
+        return keys.jwkSet().toJSONObject(true);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.crypto.impl.BaseJWSProvider;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps between JCA keys and the JWS algorithms the service signs with: RS256 (RSA),
+ * ES256 (EC P-256) and EdDSA (Ed25519). Ed25519 goes through the JDK's own provider, as
+ * the Nimbus Ed25519 classes would pull in Tink.
+ */
+final class JwsKeys {
+
+    static final List<JWSAlgorithm> SUPPORTED = List.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256, JWSAlgorithm.EdDSA);
+
+    private static final String[] KEY_FAMILIES = {"RSA", "EC", "Ed25519"};
+
+    private JwsKeys() {
+    }
+
+    static JWSAlgorithm parse(String name) {
+        JWSAlgorithm algorithm = JWSAlgorithm.parse(name);
+        if (!SUPPORTED.contains(algorithm)) {
+            throw new IllegalArgumentException("Unsupported signing algorithm " + name + ", expected one of " + SUPPORTED);
+        }
+        return algorithm;
+    }
+
+    /** The algorithm a public key signs with. */
+    static JWSAlgorithm algorithmOf(PublicKey key) {
+        if (key instanceof RSAPublicKey) {
+            return JWSAlgorithm.RS256;
+        }
+        if (key instanceof ECPublicKey ec && Curve.P_256.equals(Curve.forECParameterSpec(ec.getParams()))) {
+            return JWSAlgorithm.ES256;
+        }
+        if (key instanceof EdECPublicKey ed && "Ed25519".equals(ed.getParams().getName())) {
+            return JWSAlgorithm.EdDSA;
+        }
+        throw new IllegalArgumentException("Unsupported key type " + key.getAlgorithm());
+    }
+
+    static KeyPair generate(JWSAlgorithm algorithm) throws GeneralSecurityException {
+        if (JWSAlgorithm.RS256.equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        }
+        if (JWSAlgorithm.ES256.equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        }
+        if (JWSAlgorithm.EdDSA.equals(algorithm)) {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        }
+        throw new IllegalArgumentException("Unsupported signing algorithm " + algorithm);
+    }
+
+    static JWSSigner signer(KeyPair keyPair) throws JOSEException {
+        JWSAlgorithm algorithm = algorithmOf(keyPair.getPublic());
+        if (JWSAlgorithm.RS256.equals(algorithm)) {
+            return new RSASSASigner(keyPair.getPrivate());
+        }
+        if (JWSAlgorithm.ES256.equals(algorithm)) {
+            return new ECDSASigner((ECPrivateKey) keyPair.getPrivate());
+        }
+        return new Ed25519Signer(keyPair.getPrivate());
+    }
+
+    static JWSVerifier verifier(PublicKey key) throws JOSEException {
+        JWSAlgorithm algorithm = algorithmOf(key);
+        if (JWSAlgorithm.RS256.equals(algorithm)) {
+            return new RSASSAVerifier((RSAPublicKey) key);
+        }
+        if (JWSAlgorithm.ES256.equals(algorithm)) {
+            return new ECDSAVerifier((ECPublicKey) key);
+        }
+        return new Ed25519Verifier(key);
+    }
+
+    /** The RFC 7638 JWK thumbprint of {@code key}, used as its key id. */
+    static String thumbprint(PublicKey key) throws JOSEException {
+        return jwk(key).getKeyID();
+    }
+
+    /** {@code key} as a public signing JWK, with its thumbprint as key id. */
+    static JWK jwk(PublicKey key) throws JOSEException {
+        JWSAlgorithm algorithm = algorithmOf(key);
+        JWK jwk;
+        if (JWSAlgorithm.RS256.equals(algorithm)) {
+            jwk = new RSAKey.Builder((RSAPublicKey) key).keyIDFromThumbprint()
+                    .keyUse(KeyUse.SIGNATURE).algorithm(algorithm).build();
+        } else if (JWSAlgorithm.ES256.equals(algorithm)) {
+            jwk = new ECKey.Builder(Curve.P_256, (ECPublicKey) key).keyIDFromThumbprint()
+                    .keyUse(KeyUse.SIGNATURE).algorithm(algorithm).build();
+        } else {
+            jwk = new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(rawEd25519(key))).keyIDFromThumbprint()
+                    .keyUse(KeyUse.SIGNATURE).algorithm(algorithm).build();
+        }
+        return jwk;
+    }
+
+    /** Parses a DER (PKCS#8) private key of any supported type. */
+    static PrivateKey privateKey(byte[] der) throws GeneralSecurityException {
+        for (String family : KEY_FAMILIES) {
+            try {
+                return KeyFactory.getInstance(family).generatePrivate(new PKCS8EncodedKeySpec(der));
+            } catch (GeneralSecurityException e) {
+                // try the next family
+            }
+        }
+        throw new GeneralSecurityException("Unsupported private key");
+    }
+
+    /** Parses a DER (X.509 SubjectPublicKeyInfo) public key of any supported type. */
+    static PublicKey publicKey(byte[] der) throws GeneralSecurityException {
+        for (String family : KEY_FAMILIES) {
+            try {
+                return KeyFactory.getInstance(family).generatePublic(new X509EncodedKeySpec(der));
+            } catch (GeneralSecurityException e) {
+                // try the next family
+            }
+        }
+        throw new GeneralSecurityException("Unsupported public key");
+    }
+
+    // The X.509 encoding of an Ed25519 key is a fixed 12-byte prefix and the 32-byte point
+    private static byte[] rawEd25519(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+    }
+
+    static final class Ed25519Signer extends BaseJWSProvider implements JWSSigner {
+
+        private final PrivateKey key;
+
+        Ed25519Signer(PrivateKey key) {
+            super(Set.of(JWSAlgorithm.EdDSA));
+            this.key = key;
+        }
+
+        @Override
+        public Base64URL sign(JWSHeader header, byte[] signingInput) throws JOSEException {
+            if (!JWSAlgorithm.EdDSA.equals(header.getAlgorithm())) {
+                throw new JOSEException("Unsupported JWS algorithm " + header.getAlgorithm());
+            }
+            try {
+                Signature signature = Signature.getInstance("Ed25519");
+                signature.initSign(key);
+                signature.update(signingInput);
+                return Base64URL.encode(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new JOSEException(e.getMessage(), e);
+            }
+        }
+    }
+
+    static final class Ed25519Verifier extends BaseJWSProvider implements JWSVerifier {
+
+        private final PublicKey key;
+
+        Ed25519Verifier(PublicKey key) {
+            super(Set.of(JWSAlgorithm.EdDSA));
+            this.key = key;
+        }
+
+        @Override
+        public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+            if (!JWSAlgorithm.EdDSA.equals(header.getAlgorithm())) {
+                return false;
+            }
+            try {
+                Signature verifier = Signature.getInstance("Ed25519");
+                verifier.initVerify(key);
+                verifier.update(signingInput);
+                return verifier.verify(signature.decode());
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+    }
+}
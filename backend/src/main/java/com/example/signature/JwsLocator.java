@@ -0,0 +1,236 @@
+package com.example.signature;
+
+import com.adobe.internal.xmp.XMPException;
+import com.adobe.internal.xmp.XMPMeta;
+import com.adobe.internal.xmp.XMPMetaFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Finds an embedded JWS by walking JPEG segment and PNG chunk headers directly, skipping
+ * over pixel data and stopping at the first match. No metadata tree is built.
+ */
+final class JwsLocator {
+
+    static final String JWS_NAMESPACE = "https://example.com/jws/1.0/";
+    static final String JWS_PROPERTY = "JWS";
+
+    private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MARKER_SOI = 0xd8;
+    private static final int MARKER_EOI = 0xd9;
+    private static final int MARKER_SOS = 0xda;
+    private static final int MARKER_APP1 = 0xe1;
+
+    private JwsLocator() {
+    }
+
+    static String findInJpeg(byte[] jpeg) {
+        return findInJpeg(ByteBuffer.wrap(jpeg));
+    }
+
+    static String findInPng(byte[] png) {
+        return findInPng(ByteBuffer.wrap(png));
+    }
+
+    /** Returns the JWS from the first XMP APP1 segment that carries one, or null. */
+    static String findInJpeg(ByteBuffer jpeg) {
+        if (jpeg.limit() < 4 || (jpeg.get(0) & 0xff) != 0xff || (jpeg.get(1) & 0xff) != MARKER_SOI) {
+            return null;
+        }
+        int pos = 2;
+        while (pos + 4 <= jpeg.limit()) {
+            if ((jpeg.get(pos) & 0xff) != 0xff) {
+                return null;
+            }
+            int marker = jpeg.get(pos + 1) & 0xff;
+            if (marker == 0xff) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null; // metadata segments all precede the scan
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                pos += 2; // standalone marker, no length
+                continue;
+            }
+            int length = (jpeg.get(pos + 2) & 0xff) << 8 | (jpeg.get(pos + 3) & 0xff);
+            int data = pos + 4;
+            int end = pos + 2 + length;
+            if (length < 2 || end > jpeg.limit()) {
+                return null;
+            }
+            if (marker == MARKER_APP1 && ByteBuffers.startsWith(jpeg, data, end, XMP_HEADER)) {
+                String xmp = string(jpeg, data + XMP_HEADER.length, end, StandardCharsets.UTF_8);
+                String jws = fromXmp(xmp);
+                if (jws != null) {
+                    return jws;
+                }
+            }
+            pos = end;
+        }
+        return null;
+    }
+
+    /** Returns the text of the first "jws" iTXt, tEXt or zTXt chunk, or null. */
+    static String findInPng(ByteBuffer png) {
+        PngChunks.checkSignature(png);
+        int pos = PngChunks.SIGNATURE.length;
+        while (pos < png.limit()) {
+            int length = PngChunks.chunkLength(png, pos);
+            int type = PngChunks.readInt(png, pos + 4);
+            if (type == PngChunks.ITXT || type == PngChunks.TEXT || type == PngChunks.ZTXT) {
+                String jws = pngText(png, type, pos + 8, pos + 8 + length);
+                if (jws != null) {
+                    return jws;
+                }
+            } else if (type == PngChunks.IEND) {
+                break;
+            }
+            pos += 12 + length;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the JWS property out of an XMP packet. The attribute and element forms written
+     * by common tools are matched textually; anything else falls back to a full XMP parse.
+     */
+    static String fromXmp(String xmp) {
+        int ns = xmp.indexOf(JWS_NAMESPACE);
+        if (ns < 0) {
+            return null;
+        }
+        String prefix = namespacePrefix(xmp, ns);
+        if (prefix != null) {
+            String name = prefix + ":" + JWS_PROPERTY;
+            String value = attribute(xmp, name);
+            if (value == null) {
+                value = element(xmp, name);
+            }
+            if (value != null) {
+                return value;
+            }
+        }
+        try {
+            XMPMeta meta = XMPMetaFactory.parseFromString(xmp);
+            return meta.getPropertyString(JWS_NAMESPACE, JWS_PROPERTY);
+        } catch (XMPException e) {
+            return null;
+        }
+    }
+
+    // Finds "xmlns:prefix=" immediately before the quoted namespace URI at index ns.
+    private static String namespacePrefix(String xmp, int ns) {
+        int eq = xmp.lastIndexOf('=', ns);
+        int decl = xmp.lastIndexOf("xmlns:", eq);
+        if (eq < 0 || decl < 0 || !xmp.substring(eq + 1, ns).trim().matches("[\"']")) {
+            return null;
+        }
+        String prefix = xmp.substring(decl + "xmlns:".length(), eq).trim();
+        return prefix.isEmpty() || !prefix.matches("[\\w.-]+") ? null : prefix;
+    }
+
+    private static String attribute(String xmp, String name) {
+        int from = 0;
+        while (true) {
+            int i = xmp.indexOf(name, from);
+            if (i < 0) {
+                return null;
+            }
+            int p = i + name.length();
+            while (p < xmp.length() && Character.isWhitespace(xmp.charAt(p))) {
+                p++;
+            }
+            if (i > 0 && Character.isWhitespace(xmp.charAt(i - 1)) && p < xmp.length() && xmp.charAt(p) == '=') {
+                p++;
+                while (p < xmp.length() && Character.isWhitespace(xmp.charAt(p))) {
+                    p++;
+                }
+                if (p < xmp.length() && (xmp.charAt(p) == '"' || xmp.charAt(p) == '\'')) {
+                    int close = xmp.indexOf(xmp.charAt(p), p + 1);
+                    return close < 0 ? null : xmp.substring(p + 1, close);
+                }
+            }
+            from = i + name.length();
+        }
+    }
+
+    private static String element(String xmp, String name) {
+        String open = "<" + name + ">";
+        int start = xmp.indexOf(open);
+        if (start < 0) {
+            return null;
+        }
+        int close = xmp.indexOf("</" + name + ">", start);
+        return close < 0 ? null : xmp.substring(start + open.length(), close).trim();
+    }
+
+    private static String pngText(ByteBuffer png, int type, int data, int end) {
+        byte[] keyword = PngChunks.JWS_KEYWORD.getBytes(StandardCharsets.ISO_8859_1);
+        if (end - data <= keyword.length || !ByteBuffers.startsWith(png, data, end, keyword)
+                || png.get(data + keyword.length) != 0) {
+            return null;
+        }
+        int p = data + keyword.length + 1;
+        if (type == PngChunks.TEXT) {
+            return string(png, p, end, StandardCharsets.ISO_8859_1);
+        }
+        if (type == PngChunks.ZTXT) {
+            byte[] text = p < end ? inflate(png, p + 1, end) : null;
+            return text == null ? null : new String(text, StandardCharsets.ISO_8859_1);
+        }
+        if (p + 2 > end) {
+            return null;
+        }
+        boolean compressed = png.get(p) != 0;
+        p += 2;
+        for (int skip = 0; skip < 2; skip++) { // language tag, translated keyword
+            while (p < end && png.get(p) != 0) {
+                p++;
+            }
+            p++;
+        }
+        if (p > end) {
+            return null;
+        }
+        if (compressed) {
+            byte[] text = inflate(png, p, end);
+            return text == null ? null : new String(text, StandardCharsets.UTF_8);
+        }
+        return string(png, p, end, StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer data, int from, int to, Charset charset) {
+        byte[] bytes = new byte[to - from];
+        data.get(from, bytes);
+        return new String(bytes, charset);
+    }
+
+    private static byte[] inflate(ByteBuffer data, int from, int to) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice(from, to - from));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.example.signature;
 
-import com.nimbusds.jose.jwk.RSAKey;
-import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.JWSAlgorithm;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -9,15 +9,31 @@ import org.springframework.core.env.Environment;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Base64;
-
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Signing keys. {@code signature.algorithm} (RS256, ES256 or EdDSA) selects the key type;
+ * keys are read from {@code SIGNING_PRIVATE_KEY}/{@code SIGNING_PUBLIC_KEY} (or the
+ * {@code _FILE} variants), with the older {@code RSA_*} names still honoured for RS256.
+ * When signing with another algorithm, an {@code RSA_PUBLIC_KEY} that is still configured
+ * stays trusted so existing RS256 images keep verifying, as do the PEM files listed in
+ * {@code TRUSTED_PUBLIC_KEY_FILES}.
+ *
+ * <p>Keys can also live in a directory, {@code signature.keys.dir} (by default the one holding
+ * the {@code _PRIVATE_KEY_FILE}): every {@code <name>.pub} in it is trusted, and unless a key
+ * file is configured the {@code <name>.key}/{@code <name>.pub} pair with the greatest name
+ * signs. The directory is watched, so a key is rotated by adding a pair with a later name and
+ * retired by deleting its {@code .pub}.
+ */
 @Configuration
 public class KeyConfig {
 
@@ -35,43 +51,35 @@ public class KeyConfig {
         return Base64.getDecoder().decode(cleaned);
     }
 
-    private KeyPair loadKeysFromEnvironment() throws Exception {
-        String privateKeyPem = environment.getProperty("RSA_PRIVATE_KEY");
-        String publicKeyPem = environment.getProperty("RSA_PUBLIC_KEY");
+    private KeyPair loadKeysFromEnvironment(String prefix) throws Exception {
+        String privateKeyPem = environment.getProperty(prefix + "_PRIVATE_KEY");
+        String publicKeyPem = environment.getProperty(prefix + "_PUBLIC_KEY");
 
         if (privateKeyPem != null && publicKeyPem != null) {
-            byte[] privateKeyBytes = parsePemKey(privateKeyPem);
-            byte[] publicKeyBytes = parsePemKey(publicKeyPem);
-
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKeyBytes));
-            PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+            PrivateKey privateKey = JwsKeys.privateKey(parsePemKey(privateKeyPem));
+            PublicKey publicKey = JwsKeys.publicKey(parsePemKey(publicKeyPem));
 
             return new KeyPair(publicKey, privateKey);
         }
         return null;
     }
 
-    private KeyPair loadKeysFromFiles() throws Exception {
-        String privateKeyPath = environment.getProperty("RSA_PRIVATE_KEY_FILE");
-        String publicKeyPath = environment.getProperty("RSA_PUBLIC_KEY_FILE");
+    private KeyPair loadKeysFromFiles(String prefix) throws Exception {
+        String privateKeyPath = environment.getProperty(prefix + "_PRIVATE_KEY_FILE");
+        String publicKeyPath = environment.getProperty(prefix + "_PUBLIC_KEY_FILE");
 
         if (privateKeyPath != null && publicKeyPath != null) {
             File privateFile = new File(privateKeyPath);
             File publicFile = new File(publicKeyPath);
 
-            if (privateFile.exists() && publicFile.exists() && 
+            if (privateFile.exists() && publicFile.exists() &&
                 !privateFile.getAbsolutePath().contains("src/main/resources")) {
-                
+
                 String privateKeyPem = Files.readString(Paths.get(privateKeyPath), StandardCharsets.UTF_8);
                 String publicKeyPem = Files.readString(Paths.get(publicKeyPath), StandardCharsets.UTF_8);
 
-                byte[] privateKeyBytes = parsePemKey(privateKeyPem);
-                byte[] publicKeyBytes = parsePemKey(publicKeyPem);
-
-                KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-                PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKeyBytes));
-                PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+                PrivateKey privateKey = JwsKeys.privateKey(parsePemKey(privateKeyPem));
+                PublicKey publicKey = JwsKeys.publicKey(parsePemKey(publicKeyPem));
 
                 return new KeyPair(publicKey, privateKey);
             }
@@ -79,28 +87,141 @@ public class KeyConfig {
         return null;
     }
 
-    private KeyPair generateKeyPair() throws Exception {
-        // Use Nimbus JOSE+JWT library for consistent key generation
-        RSAKey rsaKey = new RSAKeyGenerator(2048)
-                .generate();
-        return rsaKey.toKeyPair();
+    private KeyPair loadKeys(String prefix) throws Exception {
+        KeyPair envKeys = loadKeysFromEnvironment(prefix);
+        return envKeys != null ? envKeys : loadKeysFromFiles(prefix);
+    }
+
+    private PublicKey loadPublicKey(String prefix) throws Exception {
+        String pem = environment.getProperty(prefix + "_PUBLIC_KEY");
+        String path = environment.getProperty(prefix + "_PUBLIC_KEY_FILE");
+        if (pem == null && path != null && new File(path).exists()) {
+            pem = Files.readString(Paths.get(path), StandardCharsets.UTF_8);
+        }
+        return pem == null ? null : JwsKeys.publicKey(parsePemKey(pem));
+    }
+
+    private KeyPair generateKeyPair(JWSAlgorithm algorithm) throws Exception {
+        return JwsKeys.generate(algorithm);
+    }
+
+    /** The key directory, or null if keys are only read from the environment or generated. */
+    Path keyDirectory() {
+        String dir = environment.getProperty("signature.keys.dir");
+        if (dir != null && !dir.isBlank()) {
+            return Paths.get(dir);
+        }
+        for (String prefix : new String[] {"SIGNING", "RSA"}) {
+            String file = environment.getProperty(prefix + "_PRIVATE_KEY_FILE");
+            if (file != null && new File(file).exists()) {
+                return Paths.get(file).toAbsolutePath().getParent();
+            }
+        }
+        return null;
+    }
+
+    // The greatest-named <name>.key/<name>.pub pair of the given algorithm
+    private KeyPair loadKeysFromDirectory(Path dir, JWSAlgorithm algorithm) throws Exception {
+        if (dir == null || !Files.isDirectory(dir)) {
+            return null;
+        }
+        List<Path> privateFiles;
+        try (Stream<Path> files = Files.list(dir)) {
+            privateFiles = files.filter(f -> f.getFileName().toString().endsWith(".key"))
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        }
+        for (Path privateFile : privateFiles) {
+            String name = privateFile.getFileName().toString();
+            Path publicFile = dir.resolve(name.substring(0, name.length() - ".key".length()) + ".pub");
+            if (Files.exists(publicFile)) {
+                PublicKey publicKey = JwsKeys.publicKey(parsePemKey(Files.readString(publicFile, StandardCharsets.UTF_8)));
+                if (algorithm.equals(JwsKeys.algorithmOf(publicKey))) {
+                    PrivateKey privateKey = JwsKeys.privateKey(parsePemKey(Files.readString(privateFile, StandardCharsets.UTF_8)));
+                    return new KeyPair(publicKey, privateKey);
+                }
+            }
+        }
+        return null;
     }
 
+    private List<PublicKey> loadPublicKeysFromDirectory(Path dir) throws Exception {
+        List<PublicKey> keys = new ArrayList<>();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return keys;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".pub")).sorted().toList()) {
+                keys.add(JwsKeys.publicKey(parsePemKey(Files.readString(file, StandardCharsets.UTF_8))));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Holds the keys below and reloads them when the key directory changes, polling every
+     * {@code signature.keys.reload-seconds}.
+     */
     @Bean
-    public KeyPair keyPair() throws Exception {
+    public KeyRing keyRing(SigningKeys signingKeys, VerificationCache cache,
+                           @Value("${signature.keys.reload-seconds:30}") long reloadSeconds) throws Exception {
+        Path dir = keyDirectory();
+        return new KeyRing(signingKeys, cache, dir, this::loadSigningKeys, reloadSeconds);
+    }
+
+    @Bean
+    public SigningKeys signingKeys() throws Exception {
+        return loadSigningKeys(null);
+    }
+
+    /**
+     * Reads the keys again; {@code current} stands in for a generated key so a reload does not
+     * replace it. Not a bean method, so a reload does not just get the cached bean back.
+     */
+    SigningKeys loadSigningKeys(KeyPair current) throws Exception {
+        JWSAlgorithm algorithm = JwsKeys.parse(environment.getProperty("signature.algorithm", "RS256"));
+        boolean rsa = JWSAlgorithm.RS256.equals(algorithm);
+
         // Priority 1: Load from environment variables (production)
-        KeyPair envKeys = loadKeysFromEnvironment();
-        if (envKeys != null) {
-            return envKeys;
+        // Priority 2: Load from external file paths (staging)
+        KeyPair keyPair = loadKeys("SIGNING");
+        if (keyPair == null && rsa) {
+            keyPair = loadKeys("RSA");
+        }
+        // Priority 3: Newest key pair in the key directory (rotated without a restart)
+        Path dir = keyDirectory();
+        if (keyPair == null) {
+            keyPair = loadKeysFromDirectory(dir, algorithm);
         }
 
-        // Priority 2: Load from external file paths (staging)
-        KeyPair fileKeys = loadKeysFromFiles();
-        if (fileKeys != null) {
-            return fileKeys;
+        // Priority 4: Generate dynamically (development/testing)
+        if (keyPair == null) {
+            keyPair = current != null ? current : generateKeyPair(algorithm);
+        }
+        if (!algorithm.equals(JwsKeys.algorithmOf(keyPair.getPublic()))) {
+            throw new IllegalStateException("Signing key is " + keyPair.getPublic().getAlgorithm()
+                    + " but signature.algorithm is " + algorithm);
         }
 
-        // Priority 3: Generate dynamically (development/testing)
-        return generateKeyPair();
+        List<PublicKey> trusted = new ArrayList<>();
+        trusted.add(keyPair.getPublic());
+        if (!rsa) {
+            PublicKey previous = loadPublicKey("RSA");
+            if (previous != null) {
+                trusted.add(previous);
+            }
+        }
+        for (PublicKey key : loadPublicKeysFromDirectory(dir)) {
+            if (!trusted.contains(key)) {
+                trusted.add(key);
+            }
+        }
+        for (String path : environment.getProperty("TRUSTED_PUBLIC_KEY_FILES", "").split(",")) {
+            if (!path.isBlank()) {
+                String pem = Files.readString(Paths.get(path.trim()), StandardCharsets.UTF_8);
+                trusted.add(JwsKeys.publicKey(parsePemKey(pem)));
+            }
+        }
+        return new SigningKeys(algorithm, keyPair, trusted);
     }
 }
@@ -0,0 +1,192 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The signing key and the trusted public keys, with their signers and verifiers built once.
+ * Signatures carry the JWK thumbprint of their key as {@code kid}, so a verify is a single
+ * map lookup. When keys come from a directory it is polled, and a change is applied without
+ * a restart: new keys are trusted before they sign, removed ones stop verifying.
+ */
+public class KeyRing implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyRing.class);
+
+    /** A public key signatures are accepted from. */
+    public record TrustedKey(String kid, JWSAlgorithm algorithm, JWSVerifier verifier, JWK jwk) {
+    }
+
+    /** The key new signatures are made with. */
+    public record ActiveKey(String kid, JWSAlgorithm algorithm, JWSSigner signer) {
+    }
+
+    /** Reads the keys again, given the key pair currently signing. */
+    interface Loader {
+        SigningKeys load(KeyPair current) throws Exception;
+    }
+
+    private final Map<String, TrustedKey> trusted = new ConcurrentHashMap<>();
+    private final VerificationCache cache;
+    private final Path directory;
+    private final Loader loader;
+    private final ScheduledExecutorService poller;
+    private volatile ActiveKey active;
+    private KeyPair keyPair;
+    private String stamp;
+
+    KeyRing(SigningKeys keys, VerificationCache cache) throws JOSEException {
+        this(keys, cache, null, null, 0);
+    }
+
+    /**
+     * Reloads keys through {@code loader} whenever the listing of {@code directory} changes,
+     * checked every {@code reloadSeconds} (0 only reloads on {@link #reload()}).
+     */
+    KeyRing(SigningKeys keys, VerificationCache cache, Path directory, Loader loader,
+            long reloadSeconds) throws JOSEException {
+        this.cache = cache;
+        this.directory = directory;
+        this.loader = loader;
+        install(keys);
+        if (directory != null) {
+            stamp = stamp(directory);
+        }
+        if (directory != null && reloadSeconds > 0) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "key-reload");
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(this::reload, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        } else {
+            poller = null;
+        }
+    }
+
+    public ActiveKey active() {
+        return active;
+    }
+
+    /** The trusted key with this id, or null. */
+    public TrustedKey trusted(String kid) {
+        return trusted.get(kid);
+    }
+
+    /** Trusted keys of one algorithm, for signatures made before they carried a {@code kid}. */
+    public List<TrustedKey> trusted(JWSAlgorithm algorithm) {
+        List<TrustedKey> keys = new ArrayList<>();
+        for (TrustedKey key : trusted.values()) {
+            if (key.algorithm().equals(algorithm)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /** The trusted public keys as a JWK set, the signing key first. */
+    public JWKSet jwkSet() {
+        String activeKid = active.kid();
+        List<JWK> keys = new ArrayList<>();
+        trusted.values().stream()
+                .sorted(Comparator.comparing((TrustedKey key) -> !key.kid().equals(activeKid)).thenComparing(TrustedKey::kid))
+                .forEach(key -> keys.add(key.jwk()));
+        return new JWKSet(keys);
+    }
+
+    /** The watched key directory, or null if keys are fixed for the life of the process. */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Reloads the keys if the directory changed since the last load. A set that fails to
+     * load (a half-written file, a key of the wrong type) is logged and the current keys kept;
+     * it is retried on the next poll.
+     */
+    public synchronized boolean reload() {
+        if (directory == null) {
+            return false;
+        }
+        String current = stamp(directory);
+        if (current.equals(stamp)) {
+            return false;
+        }
+        try {
+            install(loader.load(keyPair));
+            stamp = current;
+            log.info("Reloaded {} trusted keys from {}, signing with {}", trusted.size(), directory, active.kid());
+            return true;
+        } catch (Exception e) {
+            log.warn("Keeping current keys, could not load {}: {}", directory, e.toString());
+            return false;
+        }
+    }
+
+    private synchronized void install(SigningKeys keys) throws JOSEException {
+        Map<String, TrustedKey> next = new HashMap<>();
+        List<PublicKey> publicKeys = new ArrayList<>(keys.trustedKeys());
+        publicKeys.add(keys.keyPair().getPublic());
+        for (PublicKey key : publicKeys) {
+            String kid = JwsKeys.thumbprint(key);
+            next.put(kid, new TrustedKey(kid, JwsKeys.algorithmOf(key), JwsKeys.verifier(key), JwsKeys.jwk(key)));
+        }
+        ActiveKey signing = new ActiveKey(JwsKeys.thumbprint(keys.keyPair().getPublic()), keys.algorithm(),
+                JwsKeys.signer(keys.keyPair()));
+
+        // Trust the new keys before anything is signed with them, and only then drop the old ones
+        trusted.putAll(next);
+        active = signing;
+        keyPair = keys.keyPair();
+        trusted.keySet().retainAll(next.keySet());
+        cache.keysChanged(next.keySet().stream().sorted().collect(Collectors.joining(",")));
+    }
+
+    // Names, sizes and modification times: enough to notice a key being added, replaced or removed
+    private static String stamp(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().map(file -> {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    return file.getFileName() + ":" + attrs.size() + ":" + attrs.lastModifiedTime().toMillis();
+                } catch (IOException e) {
+                    return file.getFileName().toString();
+                }
+            }).collect(Collectors.joining("/"));
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+}
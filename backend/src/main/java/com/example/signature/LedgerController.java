@@ -0,0 +1,63 @@
+package com.example.signature;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Provenance of signatures by their base64url ledger id, the {@code signature} reported by a
+ * successful verification. Revoking is an operator action and lives on the management side,
+ * see {@link LedgerEndpoint}.
+ */
+@RestController
+@RequestMapping("/api/v1/ledger")
+public class LedgerController {
+
+    private final SigningLedger ledger;
+
+    public LedgerController(SigningLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @GetMapping("/{signature}")
+    public ResponseEntity<Map<String, Object>> lookup(@PathVariable String signature) {
+        if (!ledger.enabled()) {
+            return disabled();
+        }
+        try {
+            SigningLedger.Entry entry = ledger.find(signature);
+            return entry == null ? notFound() : ResponseEntity.ok(describe(entry));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid signature id"));
+        }
+    }
+
+    static Map<String, Object> describe(SigningLedger.Entry entry) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("signature", entry.signature());
+        body.put("digest", entry.digest());
+        body.put("kid", entry.kid());
+        body.put("signedAt", entry.signedAt().toString());
+        body.put("format", entry.format().extension());
+        body.put("size", entry.size());
+        body.put("revoked", entry.revoked());
+        if (entry.revoked()) {
+            body.put("revokedAt", entry.revokedAt().toString());
+        }
+        return body;
+    }
+
+    private static ResponseEntity<Map<String, Object>> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "Signature not in the signing ledger"));
+    }
+
+    private static ResponseEntity<Map<String, Object>> disabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", "Signing ledger is disabled"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.signature;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Revocation of signatures, {@code POST /actuator/ledger/{signature}}. Revoking is an operator
+ * action, so it is served by the actuator rather than the public, CORS-enabled API, and only
+ * once {@code ledger} is added to {@code management.endpoints.web.exposure.include}; run the
+ * management server on a port only operators reach ({@code management.server.port}).
+ */
+@Component
+@Endpoint(id = "ledger")
+public class LedgerEndpoint {
+
+    private final SigningLedger ledger;
+
+    public LedgerEndpoint(SigningLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @WriteOperation
+    public WebEndpointResponse<Map<String, Object>> revoke(@Selector String signature) {
+        if (!ledger.enabled()) {
+            return error(WebEndpointResponse.STATUS_NOT_FOUND, "Signing ledger is disabled");
+        }
+        try {
+            SigningLedger.Entry entry = ledger.revoke(signature);
+            return entry == null
+                    ? error(WebEndpointResponse.STATUS_NOT_FOUND, "Signature not in the signing ledger")
+                    : new WebEndpointResponse<>(LedgerController.describe(entry));
+        } catch (IllegalArgumentException e) {
+            return error(WebEndpointResponse.STATUS_BAD_REQUEST, "Invalid signature id");
+        } catch (Exception e) {
+            return error(WebEndpointResponse.STATUS_INTERNAL_SERVER_ERROR, "Failed to revoke signature");
+        }
+    }
+
+    private static WebEndpointResponse<Map<String, Object>> error(int status, String message) {
+        return new WebEndpointResponse<>(Map.of("error", message), status);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for decoding. Each decode first reserves the heap its raster will take,
+ * estimated from the image header, against a global budget; when the budget is spoken for it
+ * waits in arrival order, and after {@code signature.admission.queue-timeout-ms} gives up with
+ * {@link CpuStage.OverloadedException}. Images beyond the hard pixel and dimension limits, or
+ * needing more than the whole budget, are refused with {@link UploadSpooler.TooLargeException}
+ * before anything is decoded, which also defuses decompression bombs.
+ *
+ * <p>Threads from {@link #backgroundThreads} (sign jobs, bulk runs) have no client waiting on
+ * them to retry, so they wait for the budget for as long as it takes instead.
+ */
+@Component
+public class MemoryBudget {
+
+    /** Budget held by one decode; closing it returns the budget. */
+    public final class Reservation implements AutoCloseable {
+
+        private int units;
+
+        private Reservation(int units) {
+            this.units = units;
+        }
+
+        @Override
+        public void close() {
+            if (units > 0) {
+                permits.release(units);
+                units = 0;
+            }
+        }
+    }
+
+    private static final ThreadLocal<Boolean> BACKGROUND = ThreadLocal.withInitial(() -> false);
+
+    // Reserved in KiB so that budgets beyond 2 GiB fit the semaphore's int permits
+    private static final int UNIT = 1024;
+
+    private final long budgetBytes;
+    private final long maxPixels;
+    private final int maxDimension;
+    private final long queueTimeoutMillis;
+    private final int retryAfterSeconds;
+    private final int units;
+    private final Semaphore permits;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public MemoryBudget(@Value("${signature.admission.memory-budget-bytes:0}") long budgetBytes,
+                        @Value("${signature.admission.max-pixels:268435456}") long maxPixels,
+                        @Value("${signature.admission.max-dimension:65535}") int maxDimension,
+                        @Value("${signature.admission.queue-timeout-ms:2000}") long queueTimeoutMillis,
+                        @Value("${signature.admission.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.budgetBytes = budgetBytes > 0 ? budgetBytes : Runtime.getRuntime().maxMemory() / 2;
+        this.maxPixels = maxPixels;
+        this.maxDimension = maxDimension;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.units = (int) Math.min(Integer.MAX_VALUE, this.budgetBytes / UNIT);
+        // Fair, so a large decode is not starved by a stream of small ones
+        this.permits = new Semaphore(units, true);
+    }
+
+    /** Refuses images past the pixel or dimension limits. */
+    void check(ImageHeader header) throws UploadSpooler.TooLargeException {
+        if (header.width() > maxDimension || header.height() > maxDimension) {
+            rejected.incrementAndGet();
+            throw new UploadSpooler.TooLargeException("Image of " + header.width() + "x" + header.height()
+                    + " pixels exceeds the maximum dimension of " + maxDimension);
+        }
+        if (header.pixels() > maxPixels) {
+            rejected.incrementAndGet();
+            throw new UploadSpooler.TooLargeException("Image of " + header.pixels()
+                    + " pixels exceeds the limit of " + maxPixels);
+        }
+    }
+
+    /** Threads from {@code factory} marked as background work, which waits for the budget without a timeout. */
+    static ThreadFactory backgroundThreads(ThreadFactory factory) {
+        return r -> factory.newThread(() -> {
+            BACKGROUND.set(true);
+            r.run();
+        });
+    }
+
+    /**
+     * Reserves {@code bytes} of the budget, waiting up to the queue timeout for it (on a
+     * background thread, until it is free). Throws {@link UploadSpooler.TooLargeException} if
+     * {@code bytes} exceeds the whole budget and {@link CpuStage.OverloadedException} if it does
+     * not become free in time.
+     */
+    Reservation reserve(long bytes) throws UploadSpooler.TooLargeException, InterruptedException {
+        int need = (int) Math.min(Integer.MAX_VALUE, (bytes + UNIT - 1) / UNIT);
+        if (need > units) {
+            rejected.incrementAndGet();
+            throw new UploadSpooler.TooLargeException("Image needs " + bytes
+                    + " bytes to decode, more than the memory budget of " + budgetBytes);
+        }
+        if (need > 0 && BACKGROUND.get()) {
+            permits.acquire(need);
+        } else if (need > 0 && !permits.tryAcquire(need, queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            rejected.incrementAndGet();
+            throw new CpuStage.OverloadedException(retryAfterSeconds);
+        }
+        return new Reservation(need);
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public long reservedBytes() {
+        return (long) (units - permits.availablePermits()) * UNIT;
+    }
+
+    /** Decodes waiting for budget. */
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+
+    /** Images refused, as too large or after waiting too long, since startup. */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public long maxPixels() {
+        return maxPixels;
+    }
+
+    public int maxDimension() {
+        return maxDimension;
+    }
+
+    public long queueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.signature;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 over the elements of a raster's first bank, each element encoded as a
+ * big-endian 32-bit int (the value returned by {@link DataBuffer#getElem(int)}).
+ *
+ * <p>The backing arrays of byte, short and int buffers are read directly and expanded
+ * into a reusable chunk, so the hash sees a few large updates instead of one call per
+ * byte. Instances are not thread-safe; use {@link #start()} to get the calling thread's
+ * reusable instance.
+ */
+final class PixelDigest {
+
+    private static final int CHUNK_ELEMENTS = 16 * 1024;
+
+    private static final ThreadLocal<PixelDigest> LOCAL = ThreadLocal.withInitial(PixelDigest::new);
+
+    private final MessageDigest md;
+    private final byte[] chunk = new byte[CHUNK_ELEMENTS * 4];
+
+    private PixelDigest() {
+        try {
+            this.md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns the calling thread's digest, reset and ready for {@link #update(DataBuffer)}. */
+    static PixelDigest start() {
+        PixelDigest digest = LOCAL.get();
+        digest.md.reset();
+        return digest;
+    }
+
+    static byte[] of(DataBuffer buffer) {
+        return start().update(buffer).finish();
+    }
+
+    PixelDigest update(DataBuffer buffer) {
+        return update(buffer, 0, buffer.getSize());
+    }
+
+    /** Hashes elements {@code [from, to)} of the first bank, as {@link #update(DataBuffer)} would. */
+    PixelDigest update(DataBuffer buffer, int from, int to) {
+        int offset = buffer.getOffset() + from;
+        int size = to - from;
+        if (buffer instanceof DataBufferByte bytes) {
+            updateBytes(bytes.getData(), offset, size);
+        } else if (buffer instanceof DataBufferUShort ushorts) {
+            updateUShorts(ushorts.getData(), offset, size);
+        } else if (buffer instanceof DataBufferShort shorts) {
+            updateShorts(shorts.getData(), offset, size);
+        } else if (buffer instanceof DataBufferInt ints) {
+            updateInts(ints.getData(), offset, size);
+        } else {
+            updateElems(buffer, from, size);
+        }
+        return this;
+    }
+
+    byte[] finish() {
+        return md.digest();
+    }
+
+    private void updateBytes(byte[] data, int offset, int size) {
+        byte[] out = chunk;
+        for (int start = 0; start < size; start += CHUNK_ELEMENTS) {
+            int n = Math.min(CHUNK_ELEMENTS, size - start);
+            for (int i = 0, p = 0, s = offset + start; i < n; i++, p += 4, s++) {
+                out[p] = 0;
+                out[p + 1] = 0;
+                out[p + 2] = 0;
+                out[p + 3] = data[s];
+            }
+            md.update(out, 0, n * 4);
+        }
+    }
+
+    private void updateUShorts(short[] data, int offset, int size) {
+        byte[] out = chunk;
+        for (int start = 0; start < size; start += CHUNK_ELEMENTS) {
+            int n = Math.min(CHUNK_ELEMENTS, size - start);
+            for (int i = 0, p = 0, s = offset + start; i < n; i++, p += 4, s++) {
+                short v = data[s];
+                out[p] = 0;
+                out[p + 1] = 0;
+                out[p + 2] = (byte) (v >> 8);
+                out[p + 3] = (byte) v;
+            }
+            md.update(out, 0, n * 4);
+        }
+    }
+
+    private void updateShorts(short[] data, int offset, int size) {
+        byte[] out = chunk;
+        for (int start = 0; start < size; start += CHUNK_ELEMENTS) {
+            int n = Math.min(CHUNK_ELEMENTS, size - start);
+            for (int i = 0, p = 0, s = offset + start; i < n; i++, p += 4, s++) {
+                short v = data[s];
+                byte sign = (byte) (v >> 15);
+                out[p] = sign;
+                out[p + 1] = sign;
+                out[p + 2] = (byte) (v >> 8);
+                out[p + 3] = (byte) v;
+            }
+            md.update(out, 0, n * 4);
+        }
+    }
+
+    private void updateInts(int[] data, int offset, int size) {
+        byte[] out = chunk;
+        for (int start = 0; start < size; start += CHUNK_ELEMENTS) {
+            int n = Math.min(CHUNK_ELEMENTS, size - start);
+            for (int i = 0, p = 0, s = offset + start; i < n; i++, p += 4, s++) {
+                int v = data[s];
+                out[p] = (byte) (v >> 24);
+                out[p + 1] = (byte) (v >> 16);
+                out[p + 2] = (byte) (v >> 8);
+                out[p + 3] = (byte) v;
+            }
+            md.update(out, 0, n * 4);
+        }
+    }
+
+    // Float, double and custom buffers: same encoding through the generic accessor.
+    private void updateElems(DataBuffer buffer, int from, int size) {
+        byte[] out = chunk;
+        for (int start = 0; start < size; start += CHUNK_ELEMENTS) {
+            int n = Math.min(CHUNK_ELEMENTS, size - start);
+            for (int i = 0, p = 0; i < n; i++, p += 4) {
+                int v = buffer.getElem(from + start + i);
+                out[p] = (byte) (v >> 24);
+                out[p + 1] = (byte) (v >> 16);
+                out[p + 2] = (byte) (v >> 8);
+                out[p + 3] = (byte) v;
+            }
+            md.update(out, 0, n * 4);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.signature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Chunk-level PNG editing. The original byte stream is copied as-is, so the IDAT data
+ * (and therefore the file's compression) is never touched.
+ */
+final class PngChunks {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    static final String JWS_KEYWORD = "jws";
+
+    static final int IDAT = type("IDAT");
+    static final int IEND = type("IEND");
+    static final int ITXT = type("iTXt");
+    static final int TEXT = type("tEXt");
+    static final int ZTXT = type("zTXt");
+
+    private PngChunks() {
+    }
+
+    /**
+     * Copies {@code png} to {@code out} with an uncompressed iTXt "jws" chunk inserted
+     * before the first IDAT. Text chunks from an earlier signature are dropped.
+     */
+    static void writeWithJws(ByteBuffer png, String jws, OutputStream out) throws IOException {
+        checkSignature(png);
+        ByteBuffers.write(png, 0, SIGNATURE.length, out);
+        boolean inserted = false;
+        int pos = SIGNATURE.length;
+        while (pos < png.limit()) {
+            int length = chunkLength(png, pos);
+            int type = readInt(png, pos + 4);
+            int end = pos + 12 + length;
+            if (type == IDAT && !inserted) {
+                writeChunk(out, ITXT, jwsText(jws));
+                inserted = true;
+            }
+            if (!isJwsText(png, pos, type, length)) {
+                ByteBuffers.write(png, pos, end - pos, out);
+            }
+            pos = end;
+            if (type == IEND) {
+                break;
+            }
+        }
+        if (!inserted) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+    }
+
+    static byte[] withJws(byte[] png, String jws) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length + jws.length() + 64);
+        writeWithJws(ByteBuffer.wrap(png), jws, out);
+        return out.toByteArray();
+    }
+
+    static int type(String name) {
+        byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+        return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+    }
+
+    static void checkSignature(ByteBuffer png) {
+        if (!ByteBuffers.startsWith(png, 0, png.limit(), SIGNATURE)) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+    }
+
+    /** Returns the data length of the chunk at {@code pos}, checking it lies within the file. */
+    static int chunkLength(ByteBuffer png, int pos) {
+        if (pos + 12 > png.limit()) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+        int length = readInt(png, pos);
+        if (length < 0 || length > png.limit() - pos - 12) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+        return length;
+    }
+
+    static int readInt(ByteBuffer b, int pos) {
+        return (b.get(pos) & 0xff) << 24 | (b.get(pos + 1) & 0xff) << 16
+                | (b.get(pos + 2) & 0xff) << 8 | (b.get(pos + 3) & 0xff);
+    }
+
+    private static boolean isJwsText(ByteBuffer png, int pos, int type, int length) {
+        if (type != ITXT && type != TEXT && type != ZTXT) {
+            return false;
+        }
+        byte[] keyword = JWS_KEYWORD.getBytes(StandardCharsets.ISO_8859_1);
+        if (length <= keyword.length) {
+            return false;
+        }
+        int data = pos + 8;
+        return ByteBuffers.startsWith(png, data, data + length, keyword) && png.get(data + keyword.length) == 0;
+    }
+
+    private static byte[] jwsText(String jws) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(jws.length() + 16);
+        byte[] keyword = JWS_KEYWORD.getBytes(StandardCharsets.ISO_8859_1);
+        data.writeBytes(keyword);
+        data.write(0);
+        data.write(0); // compression flag
+        data.write(0); // compression method
+        data.write(0); // empty language tag
+        data.writeBytes(JWS_KEYWORD.getBytes(StandardCharsets.UTF_8));
+        data.write(0);
+        data.writeBytes(jws.getBytes(StandardCharsets.UTF_8));
+        return data.toByteArray();
+    }
+
+    private static void writeChunk(OutputStream out, int type, byte[] data) throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, data.length);
+        putInt(header, 4, type);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(header);
+        out.write(data);
+        out.write(trailer);
+    }
+
+    private static void putInt(byte[] b, int pos, int v) {
+        b[pos] = (byte) (v >>> 24);
+        b[pos + 1] = (byte) (v >>> 16);
+        b[pos + 2] = (byte) (v >>> 8);
+        b[pos + 3] = (byte) v;
+    }
+}
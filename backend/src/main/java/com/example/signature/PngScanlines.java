@@ -0,0 +1,274 @@
+package com.example.signature;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Row-at-a-time decoder for non-interlaced PNG. Only the previous and current scanline
+ * are held in memory, whatever the image size; samples come out exactly as stored
+ * (palette indices, unscaled gray levels, 16-bit values).
+ */
+final class PngScanlines implements AutoCloseable {
+
+    static final int COLOR_GRAY = 0;
+    static final int COLOR_RGB = 2;
+    static final int COLOR_PALETTE = 3;
+    static final int COLOR_GRAY_ALPHA = 4;
+    static final int COLOR_RGB_ALPHA = 6;
+
+    private static final int IHDR = PngChunks.type("IHDR");
+    private static final int TRNS = PngChunks.type("tRNS");
+
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final boolean interlaced;
+    private final int bands;
+    private int[] transparent;
+
+    private final int bytesPerPixel;
+    private final Inflater inflater = new Inflater();
+    private InputStream pixels;
+    private byte[] previous;
+    private byte[] current;
+    private int row;
+
+    PngScanlines(ByteBuffer png) {
+        PngChunks.checkSignature(png);
+        int pos = PngChunks.SIGNATURE.length;
+        int length = PngChunks.chunkLength(png, pos);
+        if (PngChunks.readInt(png, pos + 4) != IHDR || length < 13) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+        int ihdr = pos + 8;
+        width = PngChunks.readInt(png, ihdr);
+        height = PngChunks.readInt(png, ihdr + 4);
+        bitDepth = png.get(ihdr + 8) & 0xff;
+        colorType = png.get(ihdr + 9) & 0xff;
+        interlaced = png.get(ihdr + 12) != 0;
+        bands = switch (colorType) {
+            case COLOR_GRAY, COLOR_PALETTE -> 1;
+            case COLOR_GRAY_ALPHA -> 2;
+            case COLOR_RGB -> 3;
+            case COLOR_RGB_ALPHA -> 4;
+            default -> throw new IllegalArgumentException("Invalid PNG data");
+        };
+        if (width <= 0 || height <= 0 || Integer.bitCount(bitDepth) != 1 || bitDepth > 16) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+        bytesPerPixel = Math.max(1, bands * bitDepth / 8);
+
+        pos += 12 + length;
+        while (pos < png.limit()) {
+            length = PngChunks.chunkLength(png, pos);
+            int type = PngChunks.readInt(png, pos + 4);
+            if (type == TRNS) {
+                transparent = parseTransparent(png, pos + 8, length);
+            } else if (type == PngChunks.IDAT) {
+                pixels = new InflaterInputStream(new IdatStream(png, pos), inflater, 8192);
+                break;
+            }
+            pos += 12 + length;
+        }
+        if (pixels == null) {
+            throw new IllegalArgumentException("Invalid PNG data");
+        }
+        int rowBytes = Math.toIntExact(((long) width * bands * bitDepth + 7) / 8);
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    int bitDepth() {
+        return bitDepth;
+    }
+
+    int bands() {
+        return bands;
+    }
+
+    boolean isInterlaced() {
+        return interlaced;
+    }
+
+    /** The tRNS colour of a gray or RGB image (one value per band), or null. */
+    int[] transparentColor() {
+        return transparent;
+    }
+
+    /**
+     * Decodes the next scanline into {@code samples}, {@link #bands()} values per pixel.
+     */
+    void nextRow(int[] samples) throws IOException {
+        if (row >= height) {
+            throw new EOFException("No more rows");
+        }
+        int filter = pixels.read();
+        if (filter < 0 || pixels.readNBytes(current, 0, current.length) != current.length) {
+            throw new EOFException("Truncated PNG data");
+        }
+        unfilter(filter);
+        unpack(samples);
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+        row++;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    private void unfilter(int filter) throws IOException {
+        byte[] cur = current;
+        byte[] prev = previous;
+        int bpp = bytesPerPixel;
+        int n = cur.length;
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < n; i++) {
+                    cur[i] += cur[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    cur[i] += prev[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < bpp; i++) {
+                    cur[i] = (byte) (cur[i] + ((prev[i] & 0xff) >>> 1));
+                }
+                for (int i = bpp; i < n; i++) {
+                    cur[i] = (byte) (cur[i] + (((cur[i - bpp] & 0xff) + (prev[i] & 0xff)) >>> 1));
+                }
+                break;
+            case 4:
+                for (int i = 0; i < bpp; i++) {
+                    cur[i] += prev[i];
+                }
+                for (int i = bpp; i < n; i++) {
+                    cur[i] = (byte) (cur[i] + paeth(cur[i - bpp] & 0xff, prev[i] & 0xff, prev[i - bpp] & 0xff));
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter type " + filter);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private void unpack(int[] samples) {
+        byte[] cur = current;
+        int count = width * bands;
+        if (bitDepth == 8) {
+            for (int i = 0; i < count; i++) {
+                samples[i] = cur[i] & 0xff;
+            }
+        } else if (bitDepth == 16) {
+            for (int i = 0, p = 0; i < count; i++, p += 2) {
+                samples[i] = (cur[p] & 0xff) << 8 | (cur[p + 1] & 0xff);
+            }
+        } else {
+            int perByte = 8 / bitDepth;
+            int mask = (1 << bitDepth) - 1;
+            for (int i = 0; i < count; i++) {
+                int shift = 8 - bitDepth * (i % perByte + 1);
+                samples[i] = (cur[i / perByte] >> shift) & mask;
+            }
+        }
+    }
+
+    private int[] parseTransparent(ByteBuffer png, int data, int length) {
+        if (colorType == COLOR_GRAY && length == 2) {
+            return new int[] {readShort(png, data)};
+        }
+        if (colorType == COLOR_RGB && length == 6) {
+            return new int[] {readShort(png, data), readShort(png, data + 2), readShort(png, data + 4)};
+        }
+        return null;
+    }
+
+    private static int readShort(ByteBuffer b, int pos) {
+        return (b.get(pos) & 0xff) << 8 | (b.get(pos + 1) & 0xff);
+    }
+
+    /** The concatenated data of consecutive IDAT chunks, starting at the chunk at {@code pos}. */
+    private static final class IdatStream extends InputStream {
+
+        private final ByteBuffer png;
+        private int pos;
+        private int remaining;
+        private int next;
+
+        IdatStream(ByteBuffer png, int chunk) {
+            this.png = png;
+            open(chunk);
+        }
+
+        private void open(int chunk) {
+            int length = PngChunks.chunkLength(png, chunk);
+            pos = chunk + 8;
+            remaining = length;
+            next = pos + length + 4;
+        }
+
+        private boolean advance() {
+            while (remaining == 0) {
+                if (next + 8 > png.limit() || PngChunks.readInt(png, next + 4) != PngChunks.IDAT) {
+                    return false;
+                }
+                open(next);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            if (!advance()) {
+                return -1;
+            }
+            remaining--;
+            return png.get(pos++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int n = Math.min(len, remaining);
+            png.get(pos, b, off, n);
+            pos += n;
+            remaining -= n;
+            return n;
+        }
+    }
+}
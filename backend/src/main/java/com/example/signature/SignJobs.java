@@ -0,0 +1,341 @@
+package com.example.signature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Background signing for images too large to sign within a request. Uploads are spooled into
+ * the job directory and signed on a small pool of its own; its threads are CPU workers, so a
+ * job never waits on (or takes a slot of) the {@link CpuStage} serving interactive requests.
+ * They wait for decode memory from the {@link MemoryBudget} without a timeout, so a job is
+ * delayed, not failed, while the budget is spoken for. Results stay on disk until
+ * {@code signature.jobs.ttl-seconds} after they finish, or until
+ * {@code signature.jobs.max-store-bytes} is exceeded, oldest first.
+ */
+@Component
+public class SignJobs implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SignJobs.class);
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /** A submitted job; fields are updated by the worker and read by status requests. */
+    public static final class Job {
+        private final String id;
+        private final String filename;
+        private final Instant submittedAt;
+        private volatile ImageFormat format;
+        private volatile Status status = Status.QUEUED;
+        private volatile String error;
+        private volatile long resultBytes;
+        private volatile Instant finishedAt;
+        private volatile long finishedNanos;
+
+        private Job(String id, String filename, Instant submittedAt) {
+            this.id = id;
+            this.filename = filename;
+            this.submittedAt = submittedAt;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /** The name the result is offered under. */
+        public String filename() {
+            return filename != null && !filename.isEmpty() ? filename : "signed." + format.extension();
+        }
+
+        public ImageFormat format() {
+            return format;
+        }
+
+        public Status status() {
+            return status;
+        }
+
+        public String error() {
+            return error;
+        }
+
+        public long resultBytes() {
+            return resultBytes;
+        }
+
+        public Instant submittedAt() {
+            return submittedAt;
+        }
+
+        public Instant finishedAt() {
+            return finishedAt;
+        }
+    }
+
+    private final SignatureService service;
+    private final UploadSpooler spooler;
+    private final Path dir;
+    private final long ttlNanos;
+    private final long maxStoreBytes;
+    private final int retryAfterSeconds;
+    private final LongSupplier clock;
+    private final long cleanupPeriodSeconds;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SignJobs(SignatureService service, UploadSpooler spooler,
+                    @Value("${signature.jobs.threads:2}") int threads,
+                    @Value("${signature.jobs.queue-capacity:16}") int queueCapacity,
+                    @Value("${signature.jobs.dir:}") String dir,
+                    @Value("${signature.jobs.ttl-seconds:3600}") long ttlSeconds,
+                    @Value("${signature.jobs.max-store-bytes:2147483648}") long maxStoreBytes,
+                    @Value("${signature.jobs.retry-after-seconds:5}") int retryAfterSeconds) throws IOException {
+        this(service, spooler, threads, queueCapacity,
+                dir.isEmpty() ? Files.createTempDirectory("signature-jobs-") : Path.of(dir),
+                ttlSeconds, maxStoreBytes, retryAfterSeconds, System::nanoTime);
+    }
+
+    SignJobs(SignatureService service, UploadSpooler spooler, int threads, int queueCapacity, Path dir,
+             long ttlSeconds, long maxStoreBytes, int retryAfterSeconds, LongSupplier clock) throws IOException {
+        this.service = service;
+        this.spooler = spooler;
+        this.dir = Files.createDirectories(dir);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxStoreBytes = maxStoreBytes;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.clock = clock;
+        this.cleanupPeriodSeconds = Math.max(1, Math.min(ttlSeconds, 60));
+        // Job state lives in memory, so files left by an earlier run can never be served
+        try (Stream<Path> stale = Files.list(this.dir)) {
+            for (Path file : stale.filter(SignJobs::isJobFile).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), MemoryBudget.backgroundThreads(CpuStage.workerThreads("job-")),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts the periodic clean-up, once the jobs are fully constructed. */
+    @Override
+    public void afterPropertiesSet() {
+        cleaner.scheduleWithFixedDelay(this::cleanUp, cleanupPeriodSeconds, cleanupPeriodSeconds, TimeUnit.SECONDS);
+    }
+
+    private static boolean isJobFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".in") || name.endsWith(".part") || name.endsWith(".out");
+    }
+
+    /**
+     * Spools {@code in} and queues it for signing. Throws {@link CpuStage.OverloadedException}
+     * when the queue is full, {@link IllegalArgumentException} for content that is not an image.
+     */
+    public Job submit(InputStream in, long declaredLength, String filename) throws IOException {
+        Job job = newJob(filename);
+        return submit(job, spooler.spoolToFile(in, declaredLength, input(job)));
+    }
+
+    /** As {@link #submit(InputStream, long, String)}, moving the file the container spooled the part to. */
+    public Job submit(MultipartFile part) throws IOException {
+        Job job = newJob(part.getOriginalFilename());
+        return submit(job, spooler.spoolToFile(part, input(job)));
+    }
+
+    private Job newJob(String filename) {
+        // Refuse before reading the upload when there is obviously no room
+        if (workers.getQueue().remainingCapacity() == 0) {
+            throw new CpuStage.OverloadedException(retryAfterSeconds);
+        }
+        return new Job(UUID.randomUUID().toString(), filename, Instant.now());
+    }
+
+    private Job submit(Job job, UploadSpooler.Upload upload) {
+        String filename = job.filename;
+        try {
+            if (!upload.buffer().hasRemaining()) {
+                throw new IllegalArgumentException("Missing or empty upload");
+            }
+            job.format = ImageFormat.detect(upload.buffer(), filename == null ? "" : filename);
+            if (job.format == null) {
+                throw new IllegalArgumentException("Unsupported format");
+            }
+            jobs.put(job.id, job);
+            workers.execute(() -> run(job, upload));
+            return job;
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            upload.close();
+            throw new CpuStage.OverloadedException(retryAfterSeconds);
+        } catch (RuntimeException e) {
+            upload.close();
+            throw e;
+        }
+    }
+
+    private void run(Job job, UploadSpooler.Upload upload) {
+        job.status = Status.RUNNING;
+        Path part = dir.resolve(job.id + ".part");
+        try (upload) {
+            SignedImage signed = service.sign(upload.buffer(), job.format.extension());
+            try (OutputStream out = Files.newOutputStream(part)) {
+                signed.writeTo(out);
+            }
+            // Only complete results ever carry the name the download looks for
+            Files.move(part, result(job), StandardCopyOption.ATOMIC_MOVE);
+            job.resultBytes = Files.size(result(job));
+            finish(job, Status.DONE);
+        } catch (Exception e) {
+            job.error = e instanceof IllegalArgumentException ? e.getMessage() : "Failed to sign image";
+            log.warn("Job {} failed: {}", job.id, e.toString());
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // removed with the rest of the directory on the next start
+            }
+            finish(job, Status.FAILED);
+        }
+        if (storedBytes() > maxStoreBytes) {
+            cleanUp();
+        }
+    }
+
+    private void finish(Job job, Status status) {
+        job.finishedNanos = clock.getAsLong();
+        job.finishedAt = Instant.now();
+        job.status = status;
+    }
+
+    /** The job, or null if unknown or already expired. */
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    /** The signed image of a {@link Status#DONE} job. */
+    public Path result(Job job) {
+        return dir.resolve(job.id + ".out");
+    }
+
+    private Path input(Job job) {
+        return dir.resolve(job.id + ".in");
+    }
+
+    /** When the job's result will be removed, or null while it is still running. */
+    public Instant expiresAt(Job job) {
+        Instant finished = job.finishedAt;
+        return finished == null ? null : finished.plusNanos(ttlNanos);
+    }
+
+    /** Drops finished jobs past their TTL, then the oldest results while the store is over its limit. */
+    synchronized void cleanUp() {
+        long now = clock.getAsLong();
+        List<Job> finished = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.status == Status.DONE || job.status == Status.FAILED) {
+                if (now - job.finishedNanos >= ttlNanos) {
+                    remove(job);
+                } else {
+                    finished.add(job);
+                }
+            }
+        }
+        long stored = storedBytes();
+        finished.sort(Comparator.comparingLong(job -> job.finishedNanos));
+        for (Job job : finished) {
+            if (stored <= maxStoreBytes) {
+                break;
+            }
+            stored -= job.resultBytes;
+            remove(job);
+        }
+    }
+
+    private void remove(Job job) {
+        jobs.remove(job.id);
+        try {
+            Files.deleteIfExists(result(job));
+        } catch (IOException e) {
+            log.warn("Could not delete result of job {}: {}", job.id, e.toString());
+        }
+    }
+
+    public long storedBytes() {
+        long total = 0;
+        for (Job job : jobs.values()) {
+            if (job.status == Status.DONE) {
+                total += job.resultBytes;
+            }
+        }
+        return total;
+    }
+
+    public int threads() {
+        return workers.getCorePoolSize();
+    }
+
+    public int queueCapacity() {
+        return workers.getQueue().size() + workers.getQueue().remainingCapacity();
+    }
+
+    public int active() {
+        return workers.getActiveCount();
+    }
+
+    public int queued() {
+        return workers.getQueue().size();
+    }
+
+    public int stored() {
+        return jobs.size();
+    }
+
+    @Override
+    public void destroy() {
+        cleaner.shutdownNow();
+        workers.shutdownNow();
+        // Results cannot be found again without the in-memory job table
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(SignJobs::isJobFile).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not clear job directory {}: {}", dir, e.toString());
+        }
+    }
+}
@@ -1,11 +1,28 @@
 package com.example.signature;
 
+import org.springframework.boot.Banner;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.Map;
 
 @SpringBootApplication
+@ImportRuntimeHints(SignatureRuntimeHints.class)
 public class SignatureApplication {
     public static void main(String[] args) {
+        if (args.length > 0 && BulkCommand.COMMAND.equals(args[0])) {
+            // Command-line mode: same keys and service, no web server, exit with the command's status
+            SpringApplication app = new SpringApplication(SignatureApplication.class);
+            app.setWebApplicationType(WebApplicationType.NONE);
+            app.setBannerMode(Banner.Mode.OFF);
+            app.setLogStartupInfo(false);
+            app.setDefaultProperties(Map.of(
+                    "signature.startup.warmup-iterations", "0",
+                    "signature.verify-cache.max-entries", "0"));
+            System.exit(SpringApplication.exit(app.run(args)));
+        }
         SpringApplication.run(SignatureApplication.class, args);
     }
 }
@@ -1,5 +1,8 @@
 package com.example.signature;
 
+import com.nimbusds.jose.JWSHeader;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -8,16 +11,25 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.support.MissingServletRequestPartException;
 
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Single-image endpoints. Uploads arrive either as a multipart {@code file} part or as a raw
+ * {@code application/octet-stream} body, and are spooled by {@link UploadSpooler} rather
+ * than copied into arrays; signed images are written straight to the response.
+ */
 @RestController
 @RequestMapping("/api/v1")
 public class SignatureController {
 
     private final SignatureService service;
+    private final UploadSpooler spooler;
 
-    public SignatureController(SignatureService service) {
+    public SignatureController(SignatureService service, UploadSpooler spooler) {
         this.service = service;
+        this.spooler = spooler;
     }
 
     private String format(String filename) {
@@ -26,47 +38,173 @@ public class SignatureController {
         return filename.substring(i + 1);
     }
 
+    // The content decides the format; the extension is only consulted for unrecognised bytes
+    private String format(String filename, ByteBuffer data) {
+        ImageFormat sniffed = ImageFormat.sniff(data);
+        if (sniffed != null) {
+            return sniffed.extension();
+        }
+        return format(filename == null ? "" : filename);
+    }
+
     @PostMapping("/sign")
-    public ResponseEntity<?> sign(@RequestParam(value = "file", required = false) MultipartFile file) {
-        try {
-            if (file == null || file.isEmpty()) {
+    public ResponseEntity<?> sign(@RequestParam(value = "file", required = false) MultipartFile file,
+                                  HttpServletResponse response) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Missing or empty file parameter"));
+        }
+        try (UploadSpooler.Upload upload = spooler.spool(file)) {
+            return sign(upload, file.getOriginalFilename(), response);
+        } catch (Exception e) {
+            return signError(e);
+        }
+    }
+
+    /** Signs a raw request body; {@code filename} only matters when the content is not recognised. */
+    @PostMapping(value = "/sign", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> signRaw(@RequestParam(value = "filename", required = false) String filename,
+                                     HttpServletRequest request, HttpServletResponse response) {
+        try (UploadSpooler.Upload upload = spooler.spool(request.getInputStream(), request.getContentLengthLong())) {
+            if (!upload.buffer().hasRemaining()) {
                 return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Missing or empty file parameter"));
+                        .body(Map.of("error", "Missing or empty request body"));
             }
-            
-            String fmt = format(file.getOriginalFilename());
-            byte[] signed = service.sign(file.getBytes(), fmt);
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.valueOf(file.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + file.getOriginalFilename())
-                    .body(signed);
-        } catch (IllegalArgumentException e) {
+            return sign(upload, filename, response);
+        } catch (Exception e) {
+            return signError(e);
+        }
+    }
+
+    // Writes the signed image to the response directly; a null return tells Spring it is handled
+    private ResponseEntity<?> sign(UploadSpooler.Upload upload, String filename,
+                                   HttpServletResponse response) throws Exception {
+        String fmt = format(filename, upload.buffer());
+        SignedImage signed = service.sign(upload.buffer(), fmt);
+        if (filename == null || filename.isEmpty()) {
+            filename = "signed." + signed.format().extension();
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(signed.format().mediaType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+        try {
+            signed.writeTo(response.getOutputStream());
+        } catch (Exception e) {
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            throw e;
+        }
+        return null;
+    }
+
+    private static ResponseEntity<?> signError(Exception e) {
+        if (e instanceof CpuStage.OverloadedException overloaded) {
+            return overloaded(overloaded);
+        }
+        if (e instanceof IllegalArgumentException) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", e.getMessage()));
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Failed to sign image"));
         }
+        if (e instanceof UploadSpooler.TooLargeException) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Failed to sign image"));
+    }
+
+    // Rejected before any CPU work was done, so the client can simply try again
+    private static ResponseEntity<Map<String, Object>> overloaded(CpuStage.OverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.retryAfterSeconds()))
+                .body(Map.of("error", e.getMessage()));
     }
 
     @PostMapping("/verify")
     public ResponseEntity<Map<String, Object>> verify(@RequestParam(value = "file", required = false) MultipartFile file) {
-        try {
-            if (file == null || file.isEmpty()) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Missing or empty file parameter"));
+        }
+        try (UploadSpooler.Upload upload = spooler.spool(file)) {
+            return verify(upload, file.getOriginalFilename());
+        } catch (UploadSpooler.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (CpuStage.OverloadedException e) {
+            return overloaded(e);
+        } catch (Exception e) {
+            return ResponseEntity.ok(Map.of("valid", false));
+        }
+    }
+
+    @PostMapping(value = "/verify", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> verifyRaw(@RequestParam(value = "filename", required = false) String filename,
+                                                         HttpServletRequest request) {
+        try (UploadSpooler.Upload upload = spooler.spool(request.getInputStream(), request.getContentLengthLong())) {
+            if (!upload.buffer().hasRemaining()) {
                 return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Missing or empty file parameter"));
+                        .body(Map.of("error", "Missing or empty request body"));
+            }
+            return verify(upload, filename);
+        } catch (UploadSpooler.TooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (CpuStage.OverloadedException e) {
+            return overloaded(e);
+        } catch (Exception e) {
+            return ResponseEntity.ok(Map.of("valid", false));
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> verify(UploadSpooler.Upload upload, String filename) throws Exception {
+        try {
+            String fmt = format(filename, upload.buffer());
+            VerificationCache.Result result = service.verifyResult(upload.buffer(), fmt);
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("valid", result.valid());
+            if (!result.tampered().isEmpty()) {
+                body.put("tampered", result.tampered());
+            }
+            if (result.outcome() == VerificationCache.Outcome.REVOKED) {
+                body.put("revoked", true);
             }
-            
-            String fmt = format(file.getOriginalFilename());
-            boolean valid = service.verify(file.getBytes(), fmt);
-            
-            return ResponseEntity.ok(Map.of("valid", valid));
+            if (result.ledger() != null) {
+                body.put("ledger", LedgerController.describe(result.ledger()));
+            } else if (result.digest() != null) {
+                body.put("digest", result.digest());
+                body.put("signature", result.signature());
+            }
+            return ResponseEntity.ok(body);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/verify/inspect")
+    public ResponseEntity<Map<String, Object>> inspect(@RequestParam(value = "file", required = false) MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Missing or empty file parameter"));
+        }
+        try (UploadSpooler.Upload upload = spooler.spool(file)) {
+            ByteBuffer data = upload.buffer();
+            ImageFormat sniffed = ImageFormat.sniff(data);
+            JWSHeader header = service.inspect(data, sniffed == null ? null : sniffed.extension());
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("format", sniffed == null ? null : sniffed.extension());
+            body.put("signed", header != null);
+            if (header != null) {
+                body.put("header", header.toJSONObject());
+            }
+            return ResponseEntity.ok(body);
         } catch (Exception e) {
-            return ResponseEntity.ok(Map.of("valid", false));
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Failed to read image"));
         }
     }
 }
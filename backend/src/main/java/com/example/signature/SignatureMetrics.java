@@ -0,0 +1,118 @@
+package com.example.signature;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for the sign and verify paths. Every timer is registered up front and looked up by
+ * array index, so timing a stage costs two {@code nanoTime} calls and a histogram update.
+ *
+ * <ul>
+ *   <li>{@code signature.stage} - time per stage, tagged {@code stage}, {@code format} and
+ *       {@code size} (the upload size bucket)</li>
+ *   <li>{@code signature.verify.outcome} - verdicts, tagged {@code outcome}</li>
+ *   <li>{@code signature.inflight} - sign and verify calls in progress, tagged {@code operation}</li>
+ *   <li>{@code signature.cpu.*} and {@code signature.verify.cache.*} - CPU stage load and cache counts</li>
+ *   <li>{@code signature.memory.*} - decode memory budget in use, decodes waiting for it, and refusals</li>
+ * </ul>
+ */
+@Component
+public class SignatureMetrics {
+
+    public enum Stage {
+        /** Decoding pixels; in streaming mode this is folded into {@link #DIGEST}. */
+        DECODE,
+        /** Hashing the decoded pixels. */
+        DIGEST,
+        /** Creating the JWS signature. */
+        SIGN,
+        /** Writing the signed file (XMP rewrite or PNG chunk copy), including the output stream. */
+        EMBED,
+        /** Locating the JWS in an uploaded file. */
+        EXTRACT,
+        /** Checking the JWS signature. */
+        VERIFY
+    }
+
+    // Upper bounds of the upload size buckets; anything larger falls in the last bucket
+    private static final long[] SIZE_BOUNDS = {256L << 10, 4L << 20, 32L << 20};
+    private static final String[] SIZE_TAGS = {"le_256k", "le_4m", "le_32m", "gt_32m"};
+    private static final Duration[] SLOS = {
+            Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25),
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5), Duration.ofSeconds(10),
+            Duration.ofSeconds(30)};
+
+    private final Timer[][][] timers = new Timer[Stage.values().length][ImageFormat.values().length][SIZE_TAGS.length];
+    private final Map<VerificationCache.Outcome, Counter> outcomes = new EnumMap<>(VerificationCache.Outcome.class);
+    private final AtomicInteger signing = new AtomicInteger();
+    private final AtomicInteger verifying = new AtomicInteger();
+
+    public SignatureMetrics(MeterRegistry registry, CpuStage cpu, VerificationCache cache, MemoryBudget budget) {
+        for (Stage stage : Stage.values()) {
+            for (ImageFormat format : ImageFormat.values()) {
+                for (int size = 0; size < SIZE_TAGS.length; size++) {
+                    timers[stage.ordinal()][format.ordinal()][size] = Timer.builder("signature.stage")
+                            .description("Time spent in one stage of signing or verifying")
+                            .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                            .tag("format", format.name().toLowerCase(Locale.ROOT))
+                            .tag("size", SIZE_TAGS[size])
+                            .serviceLevelObjectives(SLOS)
+                            .register(registry);
+                }
+            }
+        }
+        for (VerificationCache.Outcome outcome : VerificationCache.Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("signature.verify.outcome")
+                    .description("Verification verdicts")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        Gauge.builder("signature.inflight", signing, AtomicInteger::get)
+                .description("Requests currently in the service").tag("operation", "sign").register(registry);
+        Gauge.builder("signature.inflight", verifying, AtomicInteger::get)
+                .description("Requests currently in the service").tag("operation", "verify").register(registry);
+
+        Gauge.builder("signature.cpu.active", cpu, CpuStage::active).register(registry);
+        Gauge.builder("signature.cpu.queued", cpu, CpuStage::queued).register(registry);
+        FunctionCounter.builder("signature.cpu.rejected", cpu, CpuStage::rejected).register(registry);
+        FunctionCounter.builder("signature.verify.cache.hits", cache, VerificationCache::hits).register(registry);
+        FunctionCounter.builder("signature.verify.cache.misses", cache, VerificationCache::misses).register(registry);
+        Gauge.builder("signature.verify.cache.size", cache, VerificationCache::size).register(registry);
+        Gauge.builder("signature.memory.reserved", budget, MemoryBudget::reservedBytes).baseUnit("bytes").register(registry);
+        Gauge.builder("signature.memory.budget", budget, MemoryBudget::budgetBytes).baseUnit("bytes").register(registry);
+        Gauge.builder("signature.memory.waiting", budget, MemoryBudget::waiting).register(registry);
+        FunctionCounter.builder("signature.memory.rejected", budget, MemoryBudget::rejected).register(registry);
+    }
+
+    /** The timer for {@code stage} of an upload of {@code bytes} in {@code format}. */
+    public Timer timer(Stage stage, ImageFormat format, long bytes) {
+        int size = 0;
+        while (size < SIZE_BOUNDS.length && bytes > SIZE_BOUNDS[size]) {
+            size++;
+        }
+        return timers[stage.ordinal()][format.ordinal()][size];
+    }
+
+    public void outcome(VerificationCache.Outcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    AtomicInteger signing() {
+        return signing;
+    }
+
+    AtomicInteger verifying() {
+        return verifying;
+    }
+}
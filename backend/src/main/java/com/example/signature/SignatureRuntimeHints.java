@@ -0,0 +1,34 @@
+package com.example.signature;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * What AOT processing cannot see by itself. ImageIO finds the TwelveMonkeys JPEG plugin and
+ * stream providers through {@code META-INF/services} and instantiates them reflectively, and
+ * the colour code loads ICC profiles as resources. Nimbus needs nothing here: it parses JWS
+ * headers into plain maps and creates signers and verifiers directly.
+ */
+class SignatureRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final String[] IMAGEIO_PROVIDERS = {
+            "com.twelvemonkeys.imageio.plugins.jpeg.JPEGImageReaderSpi",
+            "com.twelvemonkeys.imageio.plugins.jpeg.JPEGImageWriterSpi",
+            "com.twelvemonkeys.imageio.stream.BufferedFileImageInputStreamSpi",
+            "com.twelvemonkeys.imageio.stream.BufferedRAFImageInputStreamSpi",
+            "com.twelvemonkeys.imageio.stream.BufferedInputStreamImageInputStreamSpi",
+            "com.twelvemonkeys.imageio.color.ProfileDeferralActivator$Spi"};
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (String provider : IMAGEIO_PROVIDERS) {
+            hints.reflection().registerType(TypeReference.of(provider), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+        hints.resources()
+                .registerPattern("META-INF/services/javax.imageio.spi.*")
+                .registerPattern("com/twelvemonkeys/imageio/color/icc_profiles_*.properties")
+                .registerPattern("profiles/*.icc");
+    }
+}
@@ -1,173 +1,363 @@
 package com.example.signature;
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.png.PngDirectory;
-import com.drew.metadata.xmp.XmpDirectory;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSObject;
 import com.nimbusds.jose.Payload;
-import com.nimbusds.jose.crypto.RSASSASigner;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
 import org.apache.commons.imaging.formats.jpeg.xmp.JpegXmpRewriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageTypeSpecifier;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.Raster;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.security.KeyPair;
-import java.security.MessageDigest;
-import java.security.interfaces.RSAPublicKey;
-import java.util.Iterator;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class SignatureService {
 
-    private final RSASSASigner signer;
-    private final RSASSAVerifier verifier;
+    private final KeyRing keys;
+    private final long streamingThreshold;
+    private final long stripBytes;
+    private final int tileRows;
+    private final CpuStage cpu;
+    private final MemoryBudget budget;
+    private final VerificationCache cache;
+    private final SigningLedger ledger;
+    private final SignatureMetrics metrics;
 
-    public SignatureService(KeyPair keyPair) {
-        this.signer = new RSASSASigner(keyPair.getPrivate());
-        this.verifier = new RSASSAVerifier((RSAPublicKey) keyPair.getPublic());
+    public SignatureService(KeyRing keys,
+                            @Value("${signature.digest.streaming-threshold-bytes:268435456}") long streamingThreshold,
+                            @Value("${signature.digest.strip-bytes:33554432}") long stripBytes,
+                            @Value("${signature.digest.tile-rows:64}") int tileRows,
+                            CpuStage cpu, MemoryBudget budget, VerificationCache cache, SigningLedger ledger,
+                            SignatureMetrics metrics) {
+        this.keys = keys;
+        this.streamingThreshold = streamingThreshold;
+        this.stripBytes = stripBytes;
+        this.tileRows = tileRows;
+        this.cpu = cpu;
+        this.budget = budget;
+        this.cache = cache;
+        this.ledger = ledger;
+        this.metrics = metrics;
+    }
+
+    /** The algorithm new signatures are made with. */
+    public JWSAlgorithm algorithm() {
+        return keys.active().algorithm();
     }
 
     public byte[] sign(byte[] data, String format) throws Exception {
-        byte[] digest = digest(data);
-        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.RS256), new Payload(digest));
-        jws.sign(signer);
-        String detached = jws.serialize(true);
-        if (format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg")) {
-            return embedJwsJpeg(data, detached);
-        } else if (format.equalsIgnoreCase("png")) {
-            return embedJwsPng(data, detached);
+        return sign(ByteBuffer.wrap(data), format).toByteArray();
+    }
+
+    /**
+     * Signs the image in {@code data}, which may be a memory-mapped spool file. The returned
+     * image is written out on demand, so {@code data} must stay valid until then.
+     */
+    public SignedImage sign(ByteBuffer data, String format) throws Exception {
+        return sign(data, format, true);
+    }
+
+    /** Signs without a {@link SigningLedger} record when {@code record} is false, as for warm-up images. */
+    SignedImage sign(ByteBuffer data, String format, boolean record) throws Exception {
+        data = ByteBuffers.view(data);
+        ImageFormat fmt = ImageFormat.detect(data, format);
+        if (fmt == null) {
+            throw new IllegalArgumentException("Unsupported format");
+        }
+        ImageContext context = new ImageContext(data, fmt);
+        KeyRing.ActiveKey key = keys.active();
+        metrics.signing().incrementAndGet();
+        try {
+            JWSObject signed = decode(context, () -> {
+                JWSHeader.Builder header = new JWSHeader.Builder(key.algorithm()).keyID(key.kid());
+                byte[] payload;
+                if (tileRows > 0) {
+                    TileDigest tiles = tileDigest(context, TileDigest.tileRows(tileRows, context.height()));
+                    tiles.declare(header);
+                    payload = tiles.root();
+                } else {
+                    payload = digest(context);
+                }
+                JWSObject jwsObject = new JWSObject(header.build(), new Payload(payload));
+                timed(SignatureMetrics.Stage.SIGN, context, () -> {
+                    jwsObject.sign(key.signer());
+                    return null;
+                });
+                return jwsObject;
+            });
+            // Off the CPU stage and outside the reservation: this waits for the ledger's sync
+            if (record) {
+                ledger.record(signed.getSignature().decode(), signed.getPayload().toBytes(), key.kid(), fmt, data.limit());
+            }
+            return new SignedImage(data, fmt, signed.serialize(true),
+                    metrics.timer(SignatureMetrics.Stage.EMBED, fmt, data.limit()));
+        } finally {
+            metrics.signing().decrementAndGet();
         }
-        throw new IllegalArgumentException("Unsupported format");
     }
 
     public boolean verify(byte[] data, String format) throws Exception {
+        return verify(ByteBuffer.wrap(data), format);
+    }
+
+    public boolean verify(ByteBuffer data, String format) throws Exception {
+        return verifyResult(data, format).valid();
+    }
+
+    /**
+     * Verifies {@code data} and reports which key and algorithm the verdict rests on. Bytes
+     * seen before are answered from the {@link VerificationCache} without decoding.
+     */
+    public VerificationCache.Result verifyResult(ByteBuffer data, String format) throws Exception {
+        data = ByteBuffers.view(data);
+        metrics.verifying().incrementAndGet();
         try {
-            byte[] digest = digest(data);
-            String jws;
-            if (format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg")) {
-                jws = extractJwsJpeg(data);
-            } else if (format.equalsIgnoreCase("png")) {
-                jws = extractJwsPng(data);
-            } else {
-                return false;
+            VerificationCache.Result result = provenance(verifyCached(data, format));
+            metrics.outcome(result.outcome());
+            return result;
+        } finally {
+            metrics.verifying().decrementAndGet();
+        }
+    }
+
+    // Looked up after the cache, so that a revocation applies to cached verdicts at once
+    private VerificationCache.Result provenance(VerificationCache.Result result) {
+        if (!result.valid() || result.signature() == null || !ledger.enabled()) {
+            return result;
+        }
+        SigningLedger.Entry entry = ledger.find(result.signature());
+        return entry == null ? result : result.withLedger(entry);
+    }
+
+    private VerificationCache.Result verifyCached(ByteBuffer data, String format) throws Exception {
+        if (!cache.enabled()) {
+            return verifyUncached(data, format);
+        }
+        ByteBuffer key = VerificationCache.key(data);
+        VerificationCache.Result cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        VerificationCache.Result result = verifyUncached(data, format);
+        cache.put(key, generation, result);
+        return result;
+    }
+
+    private VerificationCache.Result verifyUncached(ByteBuffer data, String format) throws Exception {
+        JWSAlgorithm alg = null;
+        try {
+            ImageFormat fmt = ImageFormat.detect(data, format);
+            if (fmt == null) {
+                return new VerificationCache.Result(VerificationCache.Outcome.UNSUPPORTED, null, null);
             }
+            // Look for the signature before decoding anything: most unsigned uploads stop here
+            String jws = timed(SignatureMetrics.Stage.EXTRACT, fmt, data.limit(), () -> extractJws(data, fmt));
             if (jws == null) {
-                return false;
+                return new VerificationCache.Result(VerificationCache.Outcome.NO_SIGNATURE, null, null);
+            }
+            // The kid names the one key to check; signatures from before kids were added
+            // fall back to the keys of their algorithm
+            JWSObject parsed = JWSObject.parse(jws);
+            JWSHeader header = parsed.getHeader();
+            alg = header.getAlgorithm();
+            List<KeyRing.TrustedKey> candidates;
+            if (header.getKeyID() != null) {
+                KeyRing.TrustedKey key = keys.trusted(header.getKeyID());
+                candidates = key != null && key.algorithm().equals(alg) ? List.of(key) : List.of();
+            } else {
+                candidates = keys.trusted(alg);
+            }
+            if (candidates.isEmpty()) {
+                return new VerificationCache.Result(VerificationCache.Outcome.INVALID, null, alg);
             }
-            JWSObject jwsObject = JWSObject.parse(jws, new Payload(digest));
-            return jwsObject.verify(verifier);
+            // Signatures from before tiles name no scheme and sign the single hash
+            Object scheme = header.getCustomParam(TileDigest.SCHEME_PARAM);
+            if (scheme != null && !TileDigest.SCHEME.equals(scheme)) {
+                return new VerificationCache.Result(VerificationCache.Outcome.INVALID, null, alg);
+            }
+            ImageContext context = new ImageContext(data, fmt);
+            return decode(context, () -> {
+                if (scheme != null) {
+                    return verifyTiles(context, jws, parsed, candidates);
+                }
+                byte[] payload = digest(context);
+                return verdict(verifyPayload(context, jws, payload, candidates), parsed, payload);
+            });
+        } catch (CpuStage.OverloadedException | UploadSpooler.TooLargeException | InterruptedException e) {
+            // Says nothing about the image, so must not be cached as a verdict
+            throw e;
         } catch (Exception e) {
             // Invalid image data, JWS format, or verification failure
-            return false;
+            return new VerificationCache.Result(VerificationCache.Outcome.INVALID, null, alg);
+        }
+    }
+
+    private VerificationCache.Result verifyTiles(ImageContext context, String jws, JWSObject parsed,
+                                                 List<KeyRing.TrustedKey> candidates) throws Exception {
+        JWSHeader header = parsed.getHeader();
+        TileDigest tiles = tileDigest(context, TileDigest.rows(header));
+        byte[] root = tiles.root();
+        String keyId = verifyPayload(context, jws, root, candidates);
+        if (keyId != null) {
+            return verdict(keyId, parsed, root);
+        }
+        // If the header's own tile list is what was signed, the signature is genuine and the
+        // tiles that differ from that list are the ones that were changed
+        List<byte[]> signed = TileDigest.leaves(header);
+        if (signed != null && signed.size() == tiles.leaves().size()
+                && verifyPayload(context, jws, TileDigest.root(signed), candidates) != null) {
+            return new VerificationCache.Result(VerificationCache.Outcome.INVALID, null, header.getAlgorithm(),
+                    tiles.mismatches(signed));
+        }
+        return verdict(null, parsed, null);
+    }
+
+    // The kid of the first candidate whose key verifies jws over payload, or null
+    private String verifyPayload(ImageContext context, String jws, byte[] payload,
+                                 List<KeyRing.TrustedKey> candidates) throws Exception {
+        JWSObject jwsObject = JWSObject.parse(jws, new Payload(payload));
+        return timed(SignatureMetrics.Stage.VERIFY, context, () -> {
+            for (KeyRing.TrustedKey key : candidates) {
+                if (jwsObject.verify(key.verifier())) {
+                    return key.kid();
+                }
+            }
+            return null;
+        });
+    }
+
+    private static VerificationCache.Result verdict(String keyId, JWSObject jws, byte[] payload) {
+        JWSAlgorithm alg = jws.getHeader().getAlgorithm();
+        return keyId != null
+                ? new VerificationCache.Result(VerificationCache.Outcome.VALID, keyId, alg, List.of(),
+                        Base64.getUrlEncoder().withoutPadding().encodeToString(payload),
+                        SigningLedger.id(jws.getSignature().decode()), null)
+                : new VerificationCache.Result(VerificationCache.Outcome.INVALID, null, alg);
+    }
+
+    /**
+     * Returns the protected header of the embedded signature without decoding any pixels,
+     * or null if the image carries no (parseable) signature.
+     */
+    public JWSHeader inspect(byte[] data, String format) {
+        return inspect(ByteBuffer.wrap(data), format);
+    }
+
+    public JWSHeader inspect(ByteBuffer data, String format) {
+        data = ByteBuffers.view(data);
+        ImageFormat fmt = ImageFormat.detect(data, format);
+        if (fmt == null) {
+            return null;
+        }
+        try {
+            String jws = extractJws(data, fmt);
+            return jws == null ? null : JWSObject.parse(jws).getHeader();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks the image against the hard limits and reserves the heap its decode takes, sized
+     * from the header alone: the raster, or for rasters past the streaming threshold one strip
+     * plus the reader's buffer of about the same size.
+     */
+    private MemoryBudget.Reservation admit(ImageContext context) throws Exception {
+        ImageHeader header = ImageHeader.read(context.data(), context.format());
+        budget.check(header);
+        long raster = header.rasterBytes();
+        return budget.reserve(raster > streamingThreshold ? Math.min(raster, 2 * stripBytes) : raster);
+    }
+
+    /** Runs {@code task} on the CPU stage while holding the memory its decode of {@code context} takes. */
+    private <T> T decode(ImageContext context, Callable<T> task) throws Exception {
+        MemoryBudget.Reservation reservation = admit(context);
+        try {
+            return cpu.call(task);
+        } finally {
+            reservation.close();
+        }
+    }
+
+    byte[] digest(ImageContext context) throws Exception {
+        // Large rasters are hashed strip by strip so they never sit in heap whole; decoding
+        // and hashing interleave there, so the whole of it is timed as the digest
+        if (context.rasterBytes() > streamingThreshold) {
+            return timed(SignatureMetrics.Stage.DIGEST, context, () -> StreamingDigest.digest(context, stripBytes));
         }
+        Raster raster = timed(SignatureMetrics.Stage.DECODE, context, context::raster);
+        return timed(SignatureMetrics.Stage.DIGEST, context, () -> PixelDigest.of(raster.getDataBuffer()));
     }
 
-    private byte[] digest(byte[] data) throws Exception {
-        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
-        if (image == null) {
-            throw new IllegalArgumentException("Invalid image data");
+    /** The {@code merkle-v1} digest of {@code context} with tiles of {@code rows} rows. */
+    TileDigest tileDigest(ImageContext context, int rows) throws Exception {
+        TileDigest tiles = new TileDigest(rows, cpu.tiles());
+        if (context.rasterBytes() > streamingThreshold) {
+            return timed(SignatureMetrics.Stage.DIGEST, context, () -> {
+                StreamingDigest.decode(context, stripBytes, rows, tiles::update);
+                return tiles;
+            });
         }
-        DataBuffer buffer = image.getRaster().getDataBuffer();
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        for (int i = 0; i < buffer.getSize(); i++) {
-            int val = buffer.getElem(i);
-            md.update((byte) (val >> 24));
-            md.update((byte) (val >> 16));
-            md.update((byte) (val >> 8));
-            md.update((byte) val);
+        Raster raster = timed(SignatureMetrics.Stage.DECODE, context, context::raster);
+        return timed(SignatureMetrics.Stage.DIGEST, context, () -> tiles.update(raster.getDataBuffer(), raster.getHeight()));
+    }
+
+    private <T> T timed(SignatureMetrics.Stage stage, ImageContext context, Callable<T> work) throws Exception {
+        return timed(stage, context.format(), context.data().limit(), work);
+    }
+
+    private <T> T timed(SignatureMetrics.Stage stage, ImageFormat format, long bytes, Callable<T> work) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return work.call();
+        } finally {
+            metrics.timer(stage, format, bytes).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        return md.digest();
     }
 
-    private byte[] embedJwsJpeg(byte[] data, String jws) throws Exception {
+    static void embedJwsJpeg(ByteBuffer data, String jws, OutputStream out) throws IOException {
         String xmp = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
                 "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">" +
                 "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">" +
                 "<rdf:Description xmlns:ns1=\"https://example.com/jws/1.0/\" ns1:JWS=\"" + jws + "\"/>" +
                 "</rdf:RDF></x:xmpmeta>";
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        new JpegXmpRewriter().updateXmpXml(new ByteArrayInputStream(data), baos, xmp);
-        return baos.toByteArray();
-    }
-
-    private byte[] embedJwsPng(byte[] data, String jws) throws IOException {
-        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
-        ImageWriter writer = writers.next();
-        ImageWriteParam param = writer.getDefaultWriteParam();
-        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
-        String formatName = metadata.getNativeMetadataFormatName();
-        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
-        
-        // Only add iTXt metadata without modifying IHDR
-        IIOMetadataNode text = new IIOMetadataNode("iTXt");
-        IIOMetadataNode entry = new IIOMetadataNode("iTXtEntry");
-        entry.setAttribute("keyword", "jws");
-        entry.setAttribute("compressionFlag", "FALSE");
-        entry.setAttribute("compressionMethod", "0");
-        entry.setAttribute("languageTag", "");
-        entry.setAttribute("translatedKeyword", "jws");
-        entry.setAttribute("text", jws);
-        text.appendChild(entry);
-        root.appendChild(text);
-        metadata.mergeTree(formatName, root);
-        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
-        writer.setOutput(ios);
-        writer.write(metadata, new IIOImage(image, null, metadata), param);
-        ios.close();
-        writer.dispose();
-        return baos.toByteArray();
-    }
-
-    private String extractJwsJpeg(byte[] data) throws Exception {
-        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(data));
-        XmpDirectory dir = metadata.getFirstDirectoryOfType(XmpDirectory.class);
-        if (dir != null && dir.getXMPMeta() != null) {
-            return dir.getXMPMeta().getPropertyString("https://example.com/jws/1.0/", "JWS");
-        }
-        return null;
-    }
-
-    private String extractJwsPng(byte[] data) throws Exception {
-        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(data));
-        for (PngDirectory dir : metadata.getDirectoriesOfType(PngDirectory.class)) {
-            // Check all available tags
-            for (int i = 0; i < 1000; i++) { // Try a range of possible tag numbers
-                if (dir.hasTagName(i)) {
-                    String desc = dir.getDescription(i);
-                    if (desc != null && desc.contains("jws")) {
-                        // Handle different text formats
-                        if (desc.startsWith("jws: ")) {
-                            return desc.substring(5);
-                        } else if (desc.contains("jws=")) {
-                            return desc.substring(desc.indexOf("jws=") + 4);
-                        } else {
-                            String[] parts = desc.split(":", 2);
-                            if (parts.length == 2 && "jws".equals(parts[0].trim())) {
-                                return parts[1].trim();
-                            }
-                        }
-                    }
-                }
+        // The rewriter closes its output, which must stay open for the caller
+        OutputStream unclosed = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
             }
-        }
-        return null;
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        new JpegXmpRewriter().updateXmpXml(ByteBuffers.inputStream(data), unclosed, xmp);
+    }
+
+    static void embedJwsPng(ByteBuffer data, String jws, OutputStream out) throws IOException {
+        PngChunks.writeWithJws(data, jws, out);
+    }
+
+    private static String extractJws(ByteBuffer data, ImageFormat format) {
+        return format == ImageFormat.JPEG ? extractJwsJpeg(data) : extractJwsPng(data);
+    }
+
+    static String extractJwsJpeg(ByteBuffer data) {
+        return JwsLocator.findInJpeg(data);
+    }
+
+    static String extractJwsPng(ByteBuffer data) {
+        return JwsLocator.findInPng(data);
     }
 }
@@ -0,0 +1,56 @@
+package com.example.signature;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of signing: the source image plus its detached JWS. The signed file is only
+ * assembled when written, straight from the source buffer into the destination stream.
+ */
+public final class SignedImage {
+
+    private final ByteBuffer source;
+    private final ImageFormat format;
+    private final String jws;
+    private final Timer embed;
+
+    SignedImage(ByteBuffer source, ImageFormat format, String jws, Timer embed) {
+        this.source = source;
+        this.format = format;
+        this.jws = jws;
+        this.embed = embed;
+    }
+
+    public ImageFormat format() {
+        return format;
+    }
+
+    /** The compact detached serialization embedded in the image. */
+    public String jws() {
+        return jws;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (format == ImageFormat.JPEG) {
+                SignatureService.embedJwsJpeg(source, jws, out);
+            } else {
+                SignatureService.embedJwsPng(source, jws, out);
+            }
+        } finally {
+            embed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(source.limit() + jws.length() + 1024);
+        writeTo(baos);
+        return baos.toByteArray();
+    }
+}
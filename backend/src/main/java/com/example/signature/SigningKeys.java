@@ -0,0 +1,23 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.List;
+
+/**
+ * The key pair images are signed with, and every public key a signature is accepted from:
+ * the signing key itself plus any keys kept for verifying images signed earlier.
+ */
+public record SigningKeys(JWSAlgorithm algorithm, KeyPair keyPair, List<PublicKey> trustedKeys) {
+
+    public SigningKeys {
+        trustedKeys = List.copyOf(trustedKeys);
+    }
+
+    /** Signs with {@code keyPair} and trusts only its public key. */
+    public static SigningKeys of(KeyPair keyPair) {
+        return new SigningKeys(JwsKeys.algorithmOf(keyPair.getPublic()), keyPair, List.of(keyPair.getPublic()));
+    }
+}
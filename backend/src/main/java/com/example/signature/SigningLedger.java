@@ -0,0 +1,554 @@
+package com.example.signature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only record of every signature made, so that a verified image can be traced back to
+ * when and with which key it was signed, and so that individual signatures can be revoked.
+ * Disabled unless {@code signature.ledger.dir} is set.
+ *
+ * <p>Signatures are identified by the SHA-256 of their JWS signature bytes, see {@link #id},
+ * not by the pixels they sign: signing the same pixels again makes a second, independent
+ * entry, and a revoked signature stays revoked whatever is appended after it.
+ *
+ * <p>The ledger file holds fixed-size, CRC-checked records (signature id, pixel digest, kid,
+ * time, format and size for a signature; id and time for a revocation) in memory-mapped segments.
+ * Appends are group committed: one writer thread takes whatever has queued up, writes it and
+ * forces it to disk once, so concurrent signers share a single sync. A signer returns only once
+ * its record is durable.
+ *
+ * <p>Lookups go through an open-addressing hash table keyed by signature id, in a second mapped
+ * file. The index is derived from the ledger and is only flushed on shutdown: if it was not
+ * shut down cleanly, the ledger is read up to its last intact record, anything after that is
+ * cleared, and the index is rebuilt from what remains.
+ */
+@Component
+public final class SigningLedger implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningLedger.class);
+
+    /**
+     * What the ledger knows about a signature: its base64url id, the base64url pixel digest it
+     * signs, and when and with which key; {@code revokedAt} is null unless revoked.
+     */
+    public record Entry(String signature, String digest, String kid, Instant signedAt, ImageFormat format, long size,
+                        Instant revokedAt) {
+
+        public boolean revoked() {
+            return revokedAt != null;
+        }
+    }
+
+    static final String LEDGER_FILE = "ledger.dat";
+    static final String INDEX_FILE = "ledger.idx";
+    static final int DIGEST_BYTES = 32;
+
+    // Ledger: a header in the first record slot, then records of
+    // crc(4) type(1) format(1) kid length(1) pad(1) time(8) size(8) id(32) digest(32) kid(64) pad(8),
+    // the format as one of the codes in formatCode
+    static final int RECORD = 160;
+    private static final long LEDGER_MAGIC = 0x5349474c45444731L; // "SIGLEDG1"
+    private static final int TYPE_SIGNED = 1;
+    private static final int TYPE_REVOKED = 2;
+    private static final int MAX_KID = 64;
+
+    // Index: magic(8) slots(4) clean(4) records(8) entries(8), then slots of id(32) record+1(8) revokedAt(8)
+    private static final int INDEX_HEADER = 64;
+    private static final int ENTRY = 48;
+    private static final long INDEX_MAGIC = 0x5349474c49445831L; // "SIGLIDX1"
+    private static final int MAX_SLOTS = 1 << 25;
+
+    private static final int SEGMENT_RECORDS = 1 << 19; // 80 MiB
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int MAX_BATCH = 1024;
+
+    private record Pending(byte[] record, CompletableFuture<Void> done) {
+    }
+
+    private static final Pending STOP = new Pending(null, null);
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final LongSupplier clock;
+    private final FileChannel ledger;
+    private final FileLock lock;
+    private final FileChannel indexFile;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final byte[] scratch = new byte[DIGEST_BYTES];
+    private final Thread writer;
+    private MappedByteBuffer index;
+    private int slots;
+    private long entries;
+    private long records;
+    private boolean closed;
+
+    @Autowired
+    public SigningLedger(@Value("${signature.ledger.dir:}") String dir) throws IOException {
+        this(dir.isEmpty() ? null : Path.of(dir), SEGMENT_RECORDS, INITIAL_SLOTS, System::currentTimeMillis);
+    }
+
+    /** A disabled ledger, without the checked exception of opening one. */
+    SigningLedger() {
+        this.dir = null;
+        this.segmentRecords = 0;
+        this.clock = System::currentTimeMillis;
+        this.ledger = null;
+        this.lock = null;
+        this.indexFile = null;
+        this.writer = null;
+    }
+
+    SigningLedger(Path dir, int segmentRecords, int initialSlots, LongSupplier clock) throws IOException {
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.clock = clock;
+        if (dir == null) {
+            this.ledger = null;
+            this.lock = null;
+            this.indexFile = null;
+            this.writer = null;
+            return;
+        }
+        Files.createDirectories(dir);
+        this.ledger = FileChannel.open(dir.resolve(LEDGER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock = ledger.tryLock();
+        if (lock == null) {
+            ledger.close();
+            throw new IOException("Signing ledger " + dir + " is in use by another process");
+        }
+        boolean fresh = ledger.size() == 0;
+        MappedByteBuffer first = segment(0);
+        if (fresh) {
+            first.putLong(0, LEDGER_MAGIC);
+            first.putInt(8, RECORD);
+            first.force(0, RECORD);
+        } else if (first.getLong(0) != LEDGER_MAGIC || first.getInt(8) != RECORD) {
+            throw new IOException("Not a signing ledger: " + dir.resolve(LEDGER_FILE));
+        }
+        this.indexFile = FileChannel.open(dir.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!openIndex()) {
+            recover(initialSlots);
+        }
+        // Marked clean again on shutdown; until then a restart cannot trust it
+        index.putInt(12, 0);
+        index.force(0, INDEX_HEADER);
+
+        // Final class, so the writer cannot see a subclass that has not finished constructing
+        this.writer = new Thread(this::writeLoop, "ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean enabled() {
+        return dir != null;
+    }
+
+    /** Records in the ledger, revocations included. */
+    public synchronized long records() {
+        return records;
+    }
+
+    /** The base64url ledger id of a JWS signature, the SHA-256 of its signature bytes. */
+    public static String id(byte[] signature) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sha256(signature));
+    }
+
+    /**
+     * Appends {@code signature}, the JWS signature bytes over pixel {@code digest}, and returns
+     * once it is on disk. A signature already in the ledger keeps its first record, and its
+     * revocation if it has one.
+     */
+    void record(byte[] signature, byte[] digest, String kid, ImageFormat format, long size)
+            throws IOException, InterruptedException {
+        if (!enabled()) {
+            return;
+        }
+        append(encode(TYPE_SIGNED, sha256(signature), digest, kid, formatCode(format), size, clock.getAsLong()));
+    }
+
+    /** Provenance of a signature by its base64url id, or null if unknown (or the ledger is disabled). */
+    public synchronized Entry find(String id) {
+        if (!enabled()) {
+            return null;
+        }
+        byte[] key = parse(id);
+        int pos = probe(key);
+        long ref = index.getLong(pos + DIGEST_BYTES);
+        return ref == 0 ? null : entry(id, ref - 1, index.getLong(pos + DIGEST_BYTES + 8));
+    }
+
+    /**
+     * Revokes a signature by its base64url id and returns its provenance, or null if unknown.
+     * Revoking twice keeps the first revocation time.
+     */
+    public Entry revoke(String id) throws IOException, InterruptedException {
+        Entry entry = find(id);
+        if (entry == null || entry.revoked()) {
+            return entry;
+        }
+        append(encode(TYPE_REVOKED, parse(id), new byte[DIGEST_BYTES], null, 0, 0, clock.getAsLong()));
+        return find(id);
+    }
+
+    private static byte[] parse(String id) {
+        byte[] key = Base64.getUrlDecoder().decode(id);
+        if (key.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("Signature id must be " + DIGEST_BYTES + " bytes");
+        }
+        return key;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void append(byte[] record) throws IOException, InterruptedException {
+        Pending pending = new Pending(record, new CompletableFuture<>());
+        synchronized (queue) {
+            if (closed) {
+                throw new IOException("Signing ledger is closed");
+            }
+            queue.add(pending);
+        }
+        try {
+            pending.done().get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Everything that queued up while the last batch was syncing goes in this one
+            queue.drainTo(batch, MAX_BATCH - 1);
+            if (batch.get(batch.size() - 1) == STOP) {
+                batch.remove(batch.size() - 1);
+                stopping = true;
+            }
+            try {
+                commit(batch);
+                batch.forEach(pending -> pending.done().complete(null));
+            } catch (Exception e) {
+                log.error("Could not write to signing ledger {}: {}", dir, e.toString());
+                batch.forEach(pending -> pending.done().completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    // Only the writer thread appends, so records cannot move underneath it
+    private void commit(List<Pending> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long first = records();
+        for (int i = 0; i < batch.size(); i++) {
+            long slot = first + i;
+            segment(segmentOf(slot)).put(offsetOf(slot), batch.get(i).record());
+        }
+        // One sync per segment touched, of just the bytes written
+        long last = first + batch.size() - 1;
+        for (int k = segmentOf(first); k <= segmentOf(last); k++) {
+            int from = k == segmentOf(first) ? offsetOf(first) : 0;
+            int to = k == segmentOf(last) ? offsetOf(last) + RECORD : segmentRecords * RECORD;
+            segment(k).force(from, to - from);
+        }
+        synchronized (this) {
+            for (int i = 0; i < batch.size(); i++) {
+                apply(batch.get(i).record(), first + i);
+            }
+            records = first + batch.size();
+            index.putLong(16, records);
+            index.putLong(24, entries);
+        }
+    }
+
+    private static byte[] encode(int type, byte[] id, byte[] digest, String kid, int format, long size, long time) {
+        if (digest.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("Digest must be " + DIGEST_BYTES + " bytes");
+        }
+        byte[] kidBytes = kid == null ? new byte[0] : kid.getBytes(StandardCharsets.US_ASCII);
+        if (kidBytes.length > MAX_KID) {
+            throw new IllegalArgumentException("Key id longer than " + MAX_KID + " bytes");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        record.put(4, (byte) type);
+        record.put(5, (byte) format);
+        record.put(6, (byte) kidBytes.length);
+        record.putLong(8, time);
+        record.putLong(16, size);
+        record.put(24, id);
+        record.put(56, digest);
+        record.put(88, kidBytes);
+        record.putInt(0, crc(record.array()));
+        return record.array();
+    }
+
+    // Codes are on disk, so they never change; a new format takes the next free one
+    private static int formatCode(ImageFormat format) {
+        return switch (format) {
+            case JPEG -> 1;
+            case PNG -> 2;
+        };
+    }
+
+    private static ImageFormat format(int code) {
+        return switch (code) {
+            case 1 -> ImageFormat.JPEG;
+            case 2 -> ImageFormat.PNG;
+            default -> throw new IllegalStateException("Unknown image format code " + code + " in signing ledger");
+        };
+    }
+
+    private static int crc(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record, 4, RECORD - 4);
+        return (int) crc.getValue();
+    }
+
+    private int segmentOf(long slot) {
+        return (int) ((slot + 1) / segmentRecords);
+    }
+
+    private int offsetOf(long slot) {
+        return (int) ((slot + 1) % segmentRecords) * RECORD;
+    }
+
+    // Mapping past the end of the file grows it, a segment at a time
+    private synchronized MappedByteBuffer segment(int k) throws IOException {
+        while (segments.size() <= k) {
+            long bytes = (long) segmentRecords * RECORD;
+            segments.add(ledger.map(FileChannel.MapMode.READ_WRITE, segments.size() * bytes, bytes));
+        }
+        return segments.get(k);
+    }
+
+    private byte[] read(long slot) throws IOException {
+        byte[] record = new byte[RECORD];
+        segment(segmentOf(slot)).get(offsetOf(slot), record);
+        return record;
+    }
+
+    private boolean intact(long slot) throws IOException {
+        if ((slot + 2) * RECORD > ledger.size()) {
+            return false;
+        }
+        byte[] record = read(slot);
+        int type = record[4];
+        return (type == TYPE_SIGNED || type == TYPE_REVOKED)
+                && ByteBuffer.wrap(record).getInt(0) == crc(record);
+    }
+
+    private Entry entry(String id, long slot, long revokedAt) {
+        try {
+            ByteBuffer record = ByteBuffer.wrap(read(slot));
+            byte[] digest = new byte[DIGEST_BYTES];
+            record.get(56, digest);
+            byte[] kid = new byte[record.get(6)];
+            record.get(88, kid);
+            return new Entry(id, Base64.getUrlEncoder().withoutPadding().encodeToString(digest),
+                    new String(kid, StandardCharsets.US_ASCII),
+                    Instant.ofEpochMilli(record.getLong(8)), format(record.get(5)),
+                    record.getLong(16), revokedAt == 0 ? null : Instant.ofEpochMilli(revokedAt));
+        } catch (IOException e) {
+            // The slot was mapped when it was written
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean openIndex() throws IOException {
+        if (indexFile.size() < INDEX_HEADER) {
+            return false;
+        }
+        MappedByteBuffer header = indexFile.map(FileChannel.MapMode.READ_ONLY, 0, INDEX_HEADER);
+        int size = header.getInt(8);
+        long count = header.getLong(16);
+        if (header.getLong(0) != INDEX_MAGIC || header.getInt(12) != 1 || Integer.bitCount(size) != 1
+                || size > MAX_SLOTS || indexFile.size() < INDEX_HEADER + (long) size * ENTRY) {
+            return false;
+        }
+        // After a clean shutdown the ledger ends exactly where the index does
+        if ((count > 0 && !intact(count - 1)) || intact(count)) {
+            return false;
+        }
+        mapIndex(size);
+        records = count;
+        entries = index.getLong(24);
+        return true;
+    }
+
+    private void recover(int initialSlots) throws IOException {
+        long count = 0;
+        while (intact(count)) {
+            count++;
+        }
+        // Anything past the last intact record was never acknowledged: clear it, so that it
+        // cannot resurface once later appends make the records before it intact
+        long cleared = 0;
+        byte[] blank = new byte[RECORD];
+        for (long slot = count; (slot + 2) * RECORD <= ledger.size(); slot++) {
+            if (!Arrays.equals(read(slot), blank)) {
+                segment(segmentOf(slot)).put(offsetOf(slot), blank);
+                cleared++;
+            }
+        }
+        if (cleared > 0) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        int size = initialSlots;
+        while ((long) size < count * 2 && size < MAX_SLOTS) {
+            size <<= 1;
+        }
+        indexFile.truncate(0);
+        entries = 0;
+        mapIndex(size);
+        for (long slot = 0; slot < count; slot++) {
+            apply(read(slot), slot);
+        }
+        records = count;
+        index.putLong(16, records);
+        index.putLong(24, entries);
+        if (count > 0 || cleared > 0) {
+            log.info("Rebuilt signing ledger index from {} records in {}{}", count, dir,
+                    cleared > 0 ? ", discarding " + cleared + " incomplete" : "");
+        }
+    }
+
+    private void mapIndex(int size) throws IOException {
+        slots = size;
+        index = indexFile.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) size * ENTRY);
+        index.putLong(0, INDEX_MAGIC);
+        index.putInt(8, size);
+    }
+
+    // The index position holding id, or the empty one where it would go
+    private int probe(byte[] id) {
+        int mask = slots - 1;
+        // Ids are SHA-256 output, so any 8 bytes of them are already well mixed
+        int i = (int) ByteBuffer.wrap(id).getLong() & mask;
+        while (true) {
+            int pos = INDEX_HEADER + i * ENTRY;
+            if (index.getLong(pos + DIGEST_BYTES) == 0) {
+                return pos;
+            }
+            index.get(pos, scratch);
+            if (Arrays.equals(scratch, id)) {
+                return pos;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void apply(byte[] record, long slot) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        byte[] id = new byte[DIGEST_BYTES];
+        buffer.get(24, id);
+        int pos = probe(id);
+        boolean known = index.getLong(pos + DIGEST_BYTES) != 0;
+        if (record[4] == TYPE_REVOKED) {
+            if (known && index.getLong(pos + DIGEST_BYTES + 8) == 0) {
+                index.putLong(pos + DIGEST_BYTES + 8, buffer.getLong(8));
+            }
+            return;
+        }
+        // A signature recorded again (the same key deterministically signing the same pixels)
+        // keeps its first record and its revocation
+        if (known) {
+            return;
+        }
+        // Kept at most half full, so probes stay short
+        if ((entries + 1) * 2 > slots) {
+            grow();
+            pos = probe(id);
+        }
+        index.put(pos, id);
+        index.putLong(pos + DIGEST_BYTES, slot + 1);
+        entries++;
+    }
+
+    private void grow() throws IOException {
+        if (slots >= MAX_SLOTS) {
+            throw new IOException("Signing ledger index is full at " + entries + " signatures");
+        }
+        byte[] old = new byte[slots * ENTRY];
+        index.get(INDEX_HEADER, old);
+        mapIndex(slots * 2);
+        index.put(INDEX_HEADER, new byte[old.length]);
+        for (int pos = 0; pos < old.length; pos += ENTRY) {
+            ByteBuffer entry = ByteBuffer.wrap(old, pos, ENTRY).slice();
+            if (entry.getLong(DIGEST_BYTES) != 0) {
+                byte[] id = Arrays.copyOfRange(old, pos, pos + DIGEST_BYTES);
+                index.put(probe(id), old, pos, ENTRY);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (!enabled()) {
+            return;
+        }
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+        }
+        // The writer commits everything queued before the stop
+        writer.join();
+        synchronized (this) {
+            index.force();
+            index.putInt(12, 1);
+            index.force(0, INDEX_HEADER);
+        }
+        lock.release();
+        ledger.close();
+        indexFile.close();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.signature;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Runs the sign and verify paths on synthetic images before the application reports ready.
+ * The first request otherwise pays for ImageIO plugin discovery, class loading of the codec
+ * and JOSE code, and interpreted digest loops. Runners complete before Spring Boot switches
+ * readiness to accepting traffic, which {@code /health} reports, so a replica only gets
+ * traffic once this is done.
+ *
+ * <p>With {@code signature.startup.exit-after-warmup} the application exits afterwards; this
+ * is the training run that records the AppCDS archive for the Docker image.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    // Large enough for several tiles and for the digest loops to be compiled
+    private static final int SIZE = 256;
+
+    private final SignatureService service;
+    private final VerificationCache cache;
+    private final ConfigurableApplicationContext context;
+    private final int iterations;
+    private final boolean exitAfterWarmup;
+
+    public StartupWarmup(SignatureService service, VerificationCache cache, ConfigurableApplicationContext context,
+                         @Value("${signature.startup.warmup-iterations:10}") int iterations,
+                         @Value("${signature.startup.exit-after-warmup:false}") boolean exitAfterWarmup) {
+        this.service = service;
+        this.cache = cache;
+        this.context = context;
+        this.iterations = iterations;
+        this.exitAfterWarmup = exitAfterWarmup;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (iterations > 0) {
+            long start = System.nanoTime();
+            try {
+                warmUp();
+                log.info("Warm-up: {} sign/verify rounds in {} ms", iterations, (System.nanoTime() - start) / 1_000_000);
+            } catch (Exception e) {
+                // Serving cold is better than not serving
+                log.warn("Warm-up failed: {}", e.toString());
+            }
+        }
+        if (exitAfterWarmup) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    void warmUp() throws Exception {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(0);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        byte[][] samples = {encode(image, "png"), encode(image, "jpg")};
+        String[] formats = {"png", "jpg"};
+        for (int i = 0; i < iterations; i++) {
+            for (int f = 0; f < formats.length; f++) {
+                // Kept out of the signing ledger: nobody will ever look these up
+                byte[] signed = service.sign(ByteBuffer.wrap(samples[f]), formats[f], false).toByteArray();
+                // Miss the cache each time so the decode and signature check run too
+                cache.invalidateAll();
+                if (!service.verify(signed, formats[f])) {
+                    throw new IllegalStateException("Warm-up signature did not verify");
+                }
+                service.inspect(signed, formats[f]);
+            }
+        }
+        cache.invalidateAll();
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.signature;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Computes the same digest as {@link PixelDigest} over a full decode, but a strip of rows
+ * at a time so heap use is bounded by the strip size rather than the image size.
+ *
+ * <p>Each strip is decoded into a raster of the reader's own destination type, so the
+ * concatenated strip buffers are element-for-element the full raster's buffer.
+ * Non-interlaced PNG is decoded scanline by scanline in a single pass; everything else
+ * (JPEG, interlaced PNG) goes through the format's {@link ImageReader} with a source
+ * region per strip, which re-reads the stream up to each strip but never holds more
+ * than one strip of pixels.
+ */
+final class StreamingDigest {
+
+    /** Receives the decoded strips top to bottom; a strip's buffer is only valid during the call. */
+    interface Strips {
+        void accept(DataBuffer strip, int rows) throws Exception;
+    }
+
+    private StreamingDigest() {
+    }
+
+    static byte[] digest(ImageContext context, long stripBytes) throws Exception {
+        PixelDigest digest = PixelDigest.start();
+        decode(context, stripBytes, 1, (strip, rows) -> digest.update(strip));
+        return digest.finish();
+    }
+
+    /**
+     * Decodes {@code context} in strips of about {@code stripBytes}, each a multiple of
+     * {@code rowMultiple} rows except the last, and passes them to {@code strips}.
+     */
+    static void decode(ImageContext context, long stripBytes, int rowMultiple, Strips strips) throws Exception {
+        int rows = (int) Math.max(1, Math.min(context.height(), stripBytes / Math.max(1, context.rowBytes())));
+        rows = Math.max(rowMultiple, rows / rowMultiple * rowMultiple);
+        if (context.isPng()) {
+            try (PngScanlines png = new PngScanlines(context.data())) {
+                if (!png.isInterlaced() && decodePng(png, context.imageType(), rows, strips)) {
+                    return;
+                }
+            }
+        }
+        decodeRegions(context, rows, strips);
+    }
+
+    private static void decodeRegions(ImageContext context, int rows, Strips strips) throws Exception {
+        int width = context.width();
+        int height = context.height();
+        ImageReader reader = context.openReader();
+        try {
+            ImageReadParam param = reader.getDefaultReadParam();
+            for (int y = 0; y < height; y += rows) {
+                int stripRows = Math.min(rows, height - y);
+                param.setSourceRegion(new Rectangle(0, y, width, stripRows));
+                BufferedImage strip = reader.read(0, param);
+                strips.accept(strip.getRaster().getDataBuffer(), stripRows);
+            }
+        } finally {
+            ImageContext.release(reader);
+        }
+    }
+
+    /**
+     * Mirrors the sample conversion of the JDK PNG reader: samples are rescaled when the
+     * destination band is wider than the bit depth, and a tRNS colour on gray/RGB images
+     * becomes an extra alpha band. Returns false, before passing on any strip, when the
+     * destination layout is one this decoder does not reproduce; the caller then falls back
+     * to ImageIO.
+     */
+    private static boolean decodePng(PngScanlines png, ImageTypeSpecifier type, int rows, Strips strips) throws Exception {
+        int width = png.width();
+        int height = png.height();
+        int bands = png.bands();
+        int bitDepth = png.bitDepth();
+        SampleModel model = type.getSampleModel(width, 1);
+        int[] transparent = png.transparentColor();
+        boolean addAlpha = transparent != null && model.getNumBands() == bands + 1;
+        if (model.getNumBands() != bands && !addAlpha) {
+            return false;
+        }
+
+        int[] sampleSizes = model.getSampleSize();
+        int[][] scale = new int[bands][];
+        for (int b = 0; b < bands; b++) {
+            if (sampleSizes[b] != bitDepth) {
+                int maxIn = (1 << bitDepth) - 1;
+                int maxOut = (1 << sampleSizes[b]) - 1;
+                scale[b] = new int[maxIn + 1];
+                for (int s = 0; s <= maxIn; s++) {
+                    scale[b][s] = (s * maxOut + maxIn / 2) / maxIn;
+                }
+            }
+        }
+
+        int outBands = model.getNumBands();
+        int opaque = bitDepth < 16 ? 255 : 65535;
+        int[] in = new int[width * bands];
+        int[] out = addAlpha ? new int[width * outBands] : in;
+        WritableRaster strip = null;
+        for (int y = 0; y < height; y += rows) {
+            int stripRows = Math.min(rows, height - y);
+            if (strip == null || strip.getHeight() != stripRows) {
+                strip = Raster.createWritableRaster(type.getSampleModel(width, stripRows), null);
+            }
+            for (int r = 0; r < stripRows; r++) {
+                png.nextRow(in);
+                for (int b = 0; b < bands; b++) {
+                    if (scale[b] != null) {
+                        int[] table = scale[b];
+                        for (int i = b; i < in.length; i += bands) {
+                            in[i] = table[in[i]];
+                        }
+                    }
+                }
+                if (addAlpha) {
+                    for (int x = 0, i = 0, o = 0; x < width; x++, i += bands, o += outBands) {
+                        boolean match = true;
+                        for (int b = 0; b < bands; b++) {
+                            out[o + b] = in[i + b];
+                            match &= in[i + b] == transparent[b];
+                        }
+                        out[o + bands] = match ? 0 : opaque;
+                    }
+                }
+                strip.setPixels(0, r, width, 1, out);
+            }
+            strips.accept(strip.getDataBuffer(), stripRows);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.util.Base64URL;
+
+import java.awt.image.DataBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code merkle-v1} digest: the raster is cut into bands of a fixed number of rows,
+ * each band is hashed with the {@link PixelDigest} element encoding, and the band hashes
+ * are combined into a Merkle root, which is what gets signed. Bands are hashed in parallel,
+ * so one large image keeps every core busy instead of one.
+ *
+ * <p>Leaves are {@code SHA-256(0x00 || band digest)} and inner nodes
+ * {@code SHA-256(0x01 || left || right)}; an odd node at the end of a level is carried up
+ * unchanged. The signature header names the scheme and tile height, and lists the leaves
+ * so a verifier can tell which bands of a tampered image no longer match.
+ */
+final class TileDigest {
+
+    /** Header parameter naming the digest scheme; signatures without it use the single hash. */
+    static final String SCHEME_PARAM = "dgst";
+    static final String SCHEME = "merkle-v1";
+    /** Header parameter holding the tile height in rows. */
+    static final String ROWS_PARAM = "tileRows";
+    /** Header parameter holding the concatenated leaf hashes, base64url encoded. */
+    static final String TILES_PARAM = "tiles";
+
+    // Bounds the leaf list, and so the header, to well within a JPEG APP1 segment
+    static final int MAX_TILES = 512;
+
+    private static final int HASH_BYTES = 32;
+
+    private final int rows;
+    private final ForkJoinPool pool;
+    private final List<byte[]> leaves = new ArrayList<>();
+    private int height;
+
+    TileDigest(int rows, ForkJoinPool pool) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Tile height must be positive");
+        }
+        this.rows = rows;
+        this.pool = pool;
+    }
+
+    /** The tile height for an image of {@code height} rows, at least {@code rows}. */
+    static int tileRows(int rows, int height) {
+        return Math.max(rows, (height + MAX_TILES - 1) / MAX_TILES);
+    }
+
+    /**
+     * Hashes the tiles of a strip of {@code stripRows} whole rows. Strips are passed top to
+     * bottom, and every strip but the last must be a multiple of the tile height.
+     */
+    TileDigest update(DataBuffer strip, int stripRows) throws Exception {
+        int perRow = strip.getSize() / stripRows;
+        int count = (stripRows + rows - 1) / rows;
+        List<Callable<byte[]>> tasks = new ArrayList<>(count);
+        for (int t = 0; t < count; t++) {
+            int from = t * rows * perRow;
+            int to = t == count - 1 ? strip.getSize() : (t + 1) * rows * perRow;
+            tasks.add(() -> leaf(PixelDigest.start().update(strip, from, to).finish()));
+        }
+        if (count == 1) {
+            leaves.add(tasks.get(0).call());
+        } else {
+            for (Future<byte[]> leaf : pool.invokeAll(tasks)) {
+                try {
+                    leaves.add(leaf.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+            }
+        }
+        height += stripRows;
+        return this;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    List<byte[]> leaves() {
+        return leaves;
+    }
+
+    byte[] root() {
+        return root(leaves);
+    }
+
+    static byte[] root(List<byte[]> leaves) {
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> up = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                up.add(sha256((byte) 1, level.get(i), level.get(i + 1)));
+            }
+            if (level.size() % 2 == 1) {
+                up.add(level.get(level.size() - 1));
+            }
+            level = up;
+        }
+        return level.isEmpty() ? sha256((byte) 1) : level.get(0);
+    }
+
+    /** The header parameters that declare this digest. */
+    JWSHeader.Builder declare(JWSHeader.Builder header) {
+        byte[] all = new byte[leaves.size() * HASH_BYTES];
+        for (int i = 0; i < leaves.size(); i++) {
+            System.arraycopy(leaves.get(i), 0, all, i * HASH_BYTES, HASH_BYTES);
+        }
+        return header.customParam(SCHEME_PARAM, SCHEME)
+                .customParam(ROWS_PARAM, rows)
+                .customParam(TILES_PARAM, Base64URL.encode(all).toString());
+    }
+
+    /** The tile height declared by a {@code merkle-v1} header. */
+    static int rows(JWSHeader header) {
+        if (!(header.getCustomParam(ROWS_PARAM) instanceof Number n) || n.longValue() < 1 || n.longValue() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Missing or invalid " + ROWS_PARAM);
+        }
+        return n.intValue();
+    }
+
+    /** The leaves listed in a {@code merkle-v1} header, or null if it lists none. */
+    static List<byte[]> leaves(JWSHeader header) {
+        if (!(header.getCustomParam(TILES_PARAM) instanceof String encoded)) {
+            return null;
+        }
+        byte[] all = new Base64URL(encoded).decode();
+        if (all.length % HASH_BYTES != 0) {
+            return null;
+        }
+        List<byte[]> leaves = new ArrayList<>(all.length / HASH_BYTES);
+        for (int i = 0; i < all.length; i += HASH_BYTES) {
+            leaves.add(Arrays.copyOfRange(all, i, i + HASH_BYTES));
+        }
+        return leaves;
+    }
+
+    /** The tiles whose leaves differ from {@code signed}, which must list as many tiles. */
+    List<VerificationCache.Region> mismatches(List<byte[]> signed) {
+        List<VerificationCache.Region> regions = new ArrayList<>();
+        for (int t = 0; t < leaves.size(); t++) {
+            if (!MessageDigest.isEqual(leaves.get(t), signed.get(t))) {
+                regions.add(new VerificationCache.Region(t, t * rows, (int) Math.min(height, (t + 1L) * rows)));
+            }
+        }
+        return regions;
+    }
+
+    private static byte[] leaf(byte[] digest) {
+        return sha256((byte) 0, digest);
+    }
+
+    private static byte[] sha256(byte prefix, byte[]... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(prefix);
+            for (byte[] part : parts) {
+                md.update(part);
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.util.Map;
+
+/**
+ * Multipart uploads past {@code signature.upload.max-bytes} are refused while the request is
+ * parsed, before any controller runs; they get the same {@code 413} as an oversized raw body.
+ */
+@RestControllerAdvice
+public class UploadExceptionHandler {
+
+    private final long maxBytes;
+
+    public UploadExceptionHandler(@Value("${signature.upload.max-bytes:536870912}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // The servlet container does not say which limit was hit, so this reports the configured one
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<Map<String, Object>> tooLarge(MaxUploadSizeExceededException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(Map.of("error", "Upload exceeds " + maxBytes + " bytes"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.signature;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns an upload stream into a {@link ByteBuffer}. Small uploads are read into heap;
+ * anything past the memory threshold is copied to a temp file and memory-mapped, so large
+ * images are paged in by the OS instead of occupying heap for the whole request.
+ */
+@Component
+public class UploadSpooler {
+
+    /**
+     * An upload larger than {@code signature.upload.max-bytes}, or an image too large to decode
+     * (see {@link MemoryBudget}).
+     */
+    public static final class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(long limit) {
+            this("Upload exceeds " + limit + " bytes");
+        }
+
+        TooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /** A spooled upload; closing it deletes the backing temp file, if there is one. */
+    public static final class Upload implements Closeable {
+
+        private final ByteBuffer buffer;
+        private final Path file;
+
+        private Upload(ByteBuffer buffer, Path file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        boolean isMapped() {
+            return file != null;
+        }
+
+        @Override
+        public void close() {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Still mapped on platforms that lock mapped files; remove it on exit instead
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    private static final int COPY_CHUNK = 64 * 1024;
+
+    private final int memoryThreshold;
+    private final long maxBytes;
+    private final Path spoolDir;
+
+    public UploadSpooler(@Value("${signature.upload.memory-threshold-bytes:8388608}") int memoryThreshold,
+                         @Value("${signature.upload.max-bytes:536870912}") long maxBytes,
+                         @Value("${signature.upload.spool-dir:}") String spoolDir) {
+        this.memoryThreshold = memoryThreshold;
+        // A mapped buffer is int-indexed
+        this.maxBytes = Math.min(maxBytes, Integer.MAX_VALUE);
+        this.spoolDir = spoolDir.isEmpty() ? null : Path.of(spoolDir);
+    }
+
+    /**
+     * Reads {@code in} to the end. {@code declaredLength} is the length announced by the
+     * client, or -1 if unknown; it only serves to reject oversized uploads early.
+     */
+    public Upload spool(InputStream in, long declaredLength) throws IOException {
+        if (declaredLength > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+        byte[] head = in.readNBytes(memoryThreshold + 1);
+        if (head.length > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+        if (head.length <= memoryThreshold) {
+            return new Upload(ByteBuffer.wrap(head), null);
+        }
+        return spoolToFile(head, in, tempFile());
+    }
+
+    /**
+     * A multipart part as an upload. Small parts are read into heap; larger ones the container
+     * has already written to disk, so they are moved into the spool rather than copied again.
+     */
+    public Upload spool(MultipartFile part) throws IOException {
+        if (part.getSize() > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+        if (part.getSize() <= memoryThreshold) {
+            return new Upload(ByteBuffer.wrap(part.getBytes()), null);
+        }
+        return spoolToFile(part, tempFile());
+    }
+
+    /**
+     * A multipart part as an upload in {@code file}, whatever its size, for uploads that must
+     * outlive the request; a part already on disk is moved there.
+     */
+    public Upload spoolToFile(MultipartFile part, Path file) throws IOException {
+        if (part.getSize() > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+        try {
+            // Servlet parts on disk are renamed into place
+            part.transferTo(file.toFile());
+            return map(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads {@code in} to the end into {@code file} and maps it, whatever its size. Used for
+     * uploads that must outlive the request; the file is deleted when the upload is closed.
+     */
+    public Upload spoolToFile(InputStream in, long declaredLength, Path file) throws IOException {
+        if (declaredLength > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+        return spoolToFile(new byte[0], in, file);
+    }
+
+    private Upload spoolToFile(byte[] head, InputStream in, Path file) throws IOException {
+        try {
+            long size = head.length;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(head);
+                byte[] chunk = new byte[COPY_CHUNK];
+                for (int n; (n = in.read(chunk)) > 0; ) {
+                    size += n;
+                    if (size > maxBytes) {
+                        throw new TooLargeException(maxBytes);
+                    }
+                    out.write(chunk, 0, n);
+                }
+            }
+            return map(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private Path tempFile() throws IOException {
+        return spoolDir == null
+                ? Files.createTempFile("upload-", ".spool")
+                : Files.createTempFile(Files.createDirectories(spoolDir), "upload-", ".spool");
+    }
+
+    private static Upload map(Path file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Upload(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file);
+        }
+    }
+}
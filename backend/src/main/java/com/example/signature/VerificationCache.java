@@ -0,0 +1,198 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Verification verdicts keyed by the SHA-256 of the uploaded bytes, so re-verifying a known
+ * file costs one pass over it instead of a decode. Entries are evicted least recently used
+ * beyond {@code signature.verify-cache.max-entries}, expire after
+ * {@code signature.verify-cache.ttl-seconds}, and are all dropped when the verifying keys change.
+ *
+ * <p>The key must be collision resistant: a forged file that collided with a signed one
+ * would inherit its verdict, which rules out the faster non-cryptographic hashes.
+ */
+@Component
+public class VerificationCache {
+
+    /** What a verification concluded. */
+    public enum Outcome {
+        VALID,
+        /** Signed, but the signature does not check out against any trusted key. */
+        INVALID,
+        /** Genuine, but revoked in the {@link SigningLedger}. */
+        REVOKED,
+        NO_SIGNATURE,
+        /** Not a JPEG or PNG. */
+        UNSUPPORTED
+    }
+
+    /** Rows {@code [fromRow, toRow)} of an image, tile {@code tile} of a tiled signature. */
+    public record Region(int tile, int fromRow, int toRow) {
+    }
+
+    /**
+     * A verdict and what it was reached with: the id of the key that verified the signature
+     * (null unless genuine) and the signature's algorithm (null for unsigned input). For a
+     * genuine tiled signature over pixels that have since changed, {@code tampered} lists
+     * the tiles that no longer match. A genuine signature also carries the base64url
+     * {@code digest} it signs, its {@link SigningLedger#id signature} id and, once looked up,
+     * its {@code ledger} entry.
+     */
+    public record Result(Outcome outcome, String keyId, JWSAlgorithm algorithm, List<Region> tampered,
+                         String digest, String signature, SigningLedger.Entry ledger) {
+
+        public Result {
+            tampered = List.copyOf(tampered);
+        }
+
+        public Result(Outcome outcome, String keyId, JWSAlgorithm algorithm, List<Region> tampered) {
+            this(outcome, keyId, algorithm, tampered, null, null, null);
+        }
+
+        public Result(Outcome outcome, String keyId, JWSAlgorithm algorithm) {
+            this(outcome, keyId, algorithm, List.of());
+        }
+
+        /** This verdict with the ledger's provenance for its signature, revoked if the ledger says so. */
+        public Result withLedger(SigningLedger.Entry entry) {
+            return new Result(entry.revoked() ? Outcome.REVOKED : outcome, keyId, algorithm, tampered, digest, signature,
+                    entry);
+        }
+
+        public boolean valid() {
+            return outcome == Outcome.VALID;
+        }
+    }
+
+    private record Entry(Result result, long expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private String keySetId;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    @Autowired
+    public VerificationCache(@Value("${signature.verify-cache.max-entries:10000}") int maxEntries,
+                             @Value("${signature.verify-cache.ttl-seconds:3600}") long ttlSeconds) {
+        this(maxEntries, ttlSeconds, System::nanoTime);
+    }
+
+    VerificationCache(int maxEntries, long ttlSeconds, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+    }
+
+    /** False when configured with no entries, in which case callers can skip hashing. */
+    public boolean enabled() {
+        return maxEntries > 0 && ttlNanos > 0;
+    }
+
+    /** The cache key for {@code data}, covering its position to its limit. */
+    static ByteBuffer key(ByteBuffer data) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(data.duplicate());
+            return ByteBuffer.wrap(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized Result get(ByteBuffer key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt() - clock.getAsLong() <= 0) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result();
+    }
+
+    /** Bumped whenever the cache is invalidated. */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Stores a verdict reached during {@code generation}. Verdicts that straddled an
+     * invalidation may have used the old keys and are discarded.
+     */
+    public synchronized void put(ByteBuffer key, long generation, Result result) {
+        if (!enabled() || generation != this.generation) {
+            return;
+        }
+        entries.put(key, new Entry(result, clock.getAsLong() + ttlNanos));
+        // Expired entries are not swept; unless read again they age to the LRU end and go first
+        Iterator<ByteBuffer> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Records the identity of the current verifying key set, dropping every entry if it
+     * differs from the one the entries were made with.
+     */
+    public synchronized void keysChanged(String keySetId) {
+        if (!Objects.equals(this.keySetId, keySetId)) {
+            this.keySetId = keySetId;
+            invalidateAll();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public long ttlSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(ttlNanos);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BatchControllerIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    SignatureService service;
+
+    private byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private byte[] zip(Map<String, byte[]> entries) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private byte[] body(MvcResult started) throws Exception {
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Test
+    void verifyBatchStreamsOneLinePerItem() throws Exception {
+        byte[] signed = service.sign(sample("png"), "png");
+        MvcResult started = mockMvc.perform(multipart("/api/v1/verify/batch")
+                        .file(new MockMultipartFile("files", "a.png", "image/png", signed))
+                        .file(new MockMultipartFile("files", "b.jpg", "image/jpeg", sample("jpg")))
+                        .file(new MockMultipartFile("files", "c.png", "image/png", new byte[] {1, 2, 3}))
+                        .file(new MockMultipartFile("files", "more.zip", "application/zip",
+                                zip(Map.of("dir/d.png", signed)))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = new String(body(started), StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(4, lines.length);
+        Map<String, String> byName = new HashMap<>();
+        for (String line : lines) {
+            String name = line.replaceAll(".*\"name\":\"([^\"]+)\".*", "$1");
+            byName.put(name, line);
+        }
+        assertTrue(byName.get("a.png").contains("\"valid\":true"));
+        assertTrue(byName.get("b.jpg").contains("\"valid\":false"));
+        assertTrue(byName.get("c.png").contains("\"valid\":false"));
+        assertTrue(byName.get("d.png").contains("\"valid\":true"));
+    }
+
+    @Test
+    void signBatchStreamsArchiveWithManifest() throws Exception {
+        MvcResult started = mockMvc.perform(multipart("/api/v1/sign/batch")
+                        .file(new MockMultipartFile("files", "a.png", "image/png", sample("png")))
+                        .file(new MockMultipartFile("files", "a.png", "image/png", sample("png")))
+                        .file(new MockMultipartFile("files", "b.jpg", "image/jpeg", sample("jpg")))
+                        .file(new MockMultipartFile("files", "bad.png", "image/png", new byte[] {1, 2, 3})))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(body(started)))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(List.of("1-a.png", "a.png", "b.jpg", BatchController.MANIFEST),
+                entries.keySet().stream().sorted().toList());
+        assertTrue(service.verify(entries.get("a.png"), "png"));
+        assertTrue(service.verify(entries.get("1-a.png"), "png"));
+        assertTrue(service.verify(entries.get("b.jpg"), "jpg"));
+        String manifest = new String(entries.get(BatchController.MANIFEST), StandardCharsets.UTF_8);
+        assertEquals(4, manifest.trim().split("\n").length);
+        assertTrue(manifest.contains("\"name\":\"bad.png\",\"error\""));
+    }
+
+    @Test
+    void signBatchAcceptsRawArchive() throws Exception {
+        MvcResult started = mockMvc.perform(post("/api/v1/sign/batch")
+                        .contentType(BatchController.ZIP)
+                        .content(zip(Map.of("a.png", sample("png"), "b.jpg", sample("jpg")))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(body(started)))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(List.of("a.png", "b.jpg", BatchController.MANIFEST),
+                entries.keySet().stream().sorted().toList());
+        assertTrue(service.verify(entries.get("a.png"), "png"));
+        assertTrue(service.verify(entries.get("b.jpg"), "jpg"));
+    }
+
+    @Test
+    void largeArchiveIsReadAsItemsComplete() throws Exception {
+        byte[] signed = service.sign(sample("png"), "png");
+        Map<String, byte[]> entries = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            entries.put("img-" + i + ".png", signed);
+        }
+        byte[] archive = zip(entries);
+        // A truncated archive reports the images read before the damage, then the error
+        byte[] truncated = Arrays.copyOf(archive, archive.length / 2);
+        MvcResult started = mockMvc.perform(multipart("/api/v1/verify/batch")
+                        .file(new MockMultipartFile("files", "all.zip", "application/zip", archive))
+                        .file(new MockMultipartFile("files", "half.zip", "application/zip", truncated)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String[] lines = new String(body(started), StandardCharsets.UTF_8).trim().split("\n");
+        long valid = Arrays.stream(lines).filter(line -> line.contains("\"valid\":true")).count();
+        assertTrue(valid > 40 && valid < 80, "valid " + valid);
+        assertEquals("{\"error\":\"Failed to read half.zip\"}", lines[lines.length - 1]);
+    }
+
+    @Test
+    void emptyBatchIsRejected() throws Exception {
+        MvcResult started = mockMvc.perform(multipart("/api/v1/verify/batch"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Missing files parameter"));
+
+        started = mockMvc.perform(post("/api/v1/verify/batch").contentType(BatchController.ZIP))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Missing or empty upload"));
+
+        started = mockMvc.perform(post("/api/v1/sign/batch").contentType(BatchController.ZIP).content(sample("png")))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Upload is not a ZIP archive"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchProcessorTest {
+
+    @Test
+    void pullsItemsOnlyAsSlotsFreeUp() throws Exception {
+        BatchProcessor processor = new BatchProcessor(2, 16);
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger maxHeld = new AtomicInteger();
+        List<String> results = new ArrayList<>();
+        try {
+            processor.run(new BatchProcessor.Source() {
+                int next;
+
+                @Override
+                public BatchProcessor.Item next() throws IOException {
+                    if (next == 3) {
+                        // One unreadable item does not stop the rest
+                        return new BatchProcessor.Item(next, "item-" + next++, null, new IOException("too big"));
+                    }
+                    if (next == 20) {
+                        return null;
+                    }
+                    maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+                    return new BatchProcessor.Item(next, "item-" + next++, ByteBuffer.allocate(1));
+                }
+
+                @Override
+                public void release(BatchProcessor.Item item) {
+                    if (item.data() != null) {
+                        held.decrementAndGet();
+                    }
+                }
+            }, item -> {
+                Thread.sleep(2);
+                return item.name();
+            }, (item, result, error) -> results.add(error != null ? error.getMessage() : result));
+        } finally {
+            processor.destroy();
+        }
+        assertEquals(20, results.size());
+        assertTrue(results.contains("too big"));
+        assertEquals(0, held.get());
+        assertTrue(maxHeld.get() <= 2, "held " + maxHeld.get());
+    }
+
+    @Test
+    void finishesItemsInFlightWhenSourceFails() throws Exception {
+        BatchProcessor processor = new BatchProcessor(4, 16);
+        List<Integer> done = new ArrayList<>();
+        try {
+            IOException e = assertThrows(IOException.class, () -> processor.run(new BatchProcessor.Source() {
+                int next;
+
+                @Override
+                public BatchProcessor.Item next() throws IOException {
+                    if (next == 3) {
+                        throw new IOException("truncated archive");
+                    }
+                    return new BatchProcessor.Item(next++, "item", ByteBuffer.allocate(1));
+                }
+            }, BatchProcessor.Item::index, (item, result, error) -> done.add(result)));
+            assertEquals("truncated archive", e.getMessage());
+        } finally {
+            processor.destroy();
+        }
+        assertEquals(List.of(0, 1, 2), done.stream().sorted().toList());
+    }
+
+    @Test
+    void cpuWorkQueuesForTheCpuStage() throws Exception {
+        BatchProcessor processor = new BatchProcessor(4, 16);
+        CpuStage stage = new CpuStage(1, 16, 1);
+        List<String> threads = new ArrayList<>();
+        try {
+            List<BatchProcessor.Item> items = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                items.add(new BatchProcessor.Item(i, "item-" + i, ByteBuffer.allocate(1)));
+            }
+            processor.run(items, item -> stage.call(() -> Thread.currentThread().getName()),
+                    (item, result, error) -> threads.add(result));
+        } finally {
+            processor.destroy();
+            stage.destroy();
+        }
+        // Batch threads are not CPU workers, so all eight ran on the stage's single thread
+        assertEquals(List.of("cpu-1"), threads.stream().distinct().toList());
+    }
+}
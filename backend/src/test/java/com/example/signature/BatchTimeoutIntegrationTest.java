@@ -0,0 +1,66 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/** A batch that streams for longer than the container's own async timeout still completes. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"signature.batch.threads=1", "signature.batch.timeout-ms=60000"})
+class BatchTimeoutIntegrationTest {
+
+    @TestConfiguration
+    static class ShortContainerTimeout {
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> asyncTimeout() {
+            return factory -> factory.addConnectorCustomizers(connector -> connector.setAsyncTimeout(500));
+        }
+    }
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @SpyBean
+    SignatureService service;
+
+    @Test
+    void slowBatchCompletes() throws Exception {
+        doAnswer(invocation -> {
+            Thread.sleep(700);
+            return invocation.callRealMethod();
+        }).when(service).verify(any(ByteBuffer.class), any());
+
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        for (int i = 0; i < 3; i++) {
+            String name = "img-" + i + ".png";
+            parts.add("files", new ByteArrayResource(new byte[] {1, 2, 3}) {
+                @Override
+                public String getFilename() {
+                    return name;
+                }
+            });
+        }
+        ResponseEntity<byte[]> response = rest.postForEntity("/api/v1/verify/batch", parts, byte[].class);
+
+        assertEquals(200, response.getStatusCode().value());
+        String[] lines = new String(response.getBody(), StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(3, lines.length);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkRunTest {
+
+    @TempDir
+    Path dir;
+
+    private final VerificationCache cache = new VerificationCache(0, 0);
+    private final CpuStage cpu = new CpuStage(2, 4, 1);
+    private final MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+    private SignatureService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new SignatureService(new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache),
+                268435456L, 33554432L, 8, cpu, budget, cache, new SigningLedger(), new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+    }
+
+    private static byte[] image(String format, int seed) throws Exception {
+        BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private Path tree() throws Exception {
+        Path source = Files.createDirectories(dir.resolve("in/a/b"));
+        Files.write(source.resolve("one.png"), image("png", 1));
+        Files.write(source.getParent().resolve("two.jpg"), image("jpg", 2));
+        Files.write(dir.resolve("in/three.PNG"), image("png", 3));
+        Files.writeString(dir.resolve("in/notes.txt"), "not an image");
+        return dir.resolve("in");
+    }
+
+    @Test
+    void signsTreeIntoTarget() throws Exception {
+        Path source = tree();
+        Path target = dir.resolve("out");
+        BulkRun.Summary summary = new BulkRun(service, BulkRun.Mode.SIGN, source, target,
+                target.resolve(".bulk-manifest"), 2).run();
+
+        assertEquals(3, summary.count(BulkRun.Status.SIGNED));
+        assertEquals(1, summary.skipped());
+        assertTrue(service.verify(Files.readAllBytes(target.resolve("a/b/one.png")), "png"));
+        assertTrue(service.verify(Files.readAllBytes(target.resolve("a/two.jpg")), "jpg"));
+        assertTrue(service.verify(Files.readAllBytes(target.resolve("three.PNG")), "png"));
+        try (var files = Files.walk(target)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".part")));
+        }
+        List<String> manifest = Files.readAllLines(target.resolve(".bulk-manifest"));
+        assertEquals("#bulk\tsign\t" + source.toAbsolutePath().normalize(), manifest.get(0));
+        assertEquals(4, manifest.size());
+    }
+
+    @Test
+    void resumesFromManifest() throws Exception {
+        Path source = tree();
+        Path target = dir.resolve("out");
+        Path manifest = target.resolve(".bulk-manifest");
+        new BulkRun(service, BulkRun.Mode.SIGN, source, target, manifest, 2).run();
+
+        // An interrupted run: one file recorded, then a torn line
+        List<String> lines = Files.readAllLines(manifest);
+        Files.writeString(manifest, lines.get(0) + "\n" + lines.get(1) + "\nsig", StandardCharsets.UTF_8);
+        BulkRun.Summary summary = new BulkRun(service, BulkRun.Mode.SIGN, source, target, manifest, 2).run();
+        assertEquals(1, summary.resumed());
+        assertEquals(2, summary.count(BulkRun.Status.SIGNED));
+
+        summary = new BulkRun(service, BulkRun.Mode.SIGN, source, target, manifest, 2).run();
+        assertEquals(3, summary.resumed());
+        assertEquals(0, summary.processed());
+    }
+
+    @Test
+    void verifiesAndReportsTampering() throws Exception {
+        Path source = tree();
+        Path target = dir.resolve("out");
+        new BulkRun(service, BulkRun.Mode.SIGN, source, target, target.resolve(".bulk-manifest"), 2).run();
+        Files.write(target.resolve("unsigned.png"), image("png", 4));
+        // Keep the signature, change the pixels
+        String jws = SignatureService.extractJwsPng(ByteBuffer.wrap(Files.readAllBytes(target.resolve("three.PNG"))));
+        Files.write(target.resolve("three.PNG"), PngChunks.withJws(image("png", 5), jws));
+
+        Path manifest = dir.resolve("verify-manifest");
+        BulkRun.Summary summary = new BulkRun(service, BulkRun.Mode.VERIFY, target, null, manifest, 2).run();
+        assertEquals(2, summary.count(BulkRun.Status.VALID));
+        assertEquals(1, summary.count(BulkRun.Status.INVALID));
+        assertEquals(1, summary.count(BulkRun.Status.UNSIGNED));
+        assertTrue(Files.readAllLines(manifest).contains("invalid\tthree.PNG\ttampered rows 0-8,8-16,16-24,24-30"));
+    }
+
+    @Test
+    void commandReportsUsageAndExitCodes() throws Exception {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        BulkCommand command = new BulkCommand(service, new PrintStream(console, true, StandardCharsets.UTF_8));
+        command.run(new DefaultApplicationArguments("bulk", "sign", tree().toString()));
+        assertEquals(2, command.getExitCode());
+        assertTrue(console.toString(StandardCharsets.UTF_8).startsWith("Usage:"));
+
+        Path target = dir.resolve("out");
+        command.run(new DefaultApplicationArguments("bulk", "sign", dir.resolve("in").toString(), target.toString(), "--threads=2"));
+        assertEquals(0, command.getExitCode());
+        assertTrue(console.toString(StandardCharsets.UTF_8).contains("signed       3"));
+
+        Files.write(target.resolve("three.PNG"), image("png", 6));
+        command.run(new DefaultApplicationArguments("bulk", "verify", target.toString(),
+                "--manifest=" + dir.resolve("verify-manifest")));
+        assertEquals(0, command.getExitCode());
+        Files.write(target.resolve("broken.png"), new byte[] {1, 2, 3});
+        command.run(new DefaultApplicationArguments("bulk", "verify", target.toString(),
+                "--manifest=" + dir.resolve("verify-manifest")));
+        assertEquals(1, command.getExitCode());
+    }
+
+    @Test
+    void verifyManifestBelongsToItsSource() throws Exception {
+        Path source = tree();
+        Path first = dir.resolve("first");
+        Path second = dir.resolve("second");
+        new BulkRun(service, BulkRun.Mode.SIGN, source, first, first.resolve(".bulk-manifest"), 2).run();
+        new BulkRun(service, BulkRun.Mode.SIGN, source, second, second.resolve(".bulk-manifest"), 2).run();
+        // Same relative paths; in the second tree one image keeps its signature over other pixels
+        String jws = SignatureService.extractJwsPng(ByteBuffer.wrap(Files.readAllBytes(second.resolve("three.PNG"))));
+        Files.write(second.resolve("three.PNG"), PngChunks.withJws(image("png", 7), jws));
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        BulkCommand command = new BulkCommand(service, new PrintStream(console, true, StandardCharsets.UTF_8));
+        command.run(new DefaultApplicationArguments("bulk", "verify", first.toString()));
+        assertEquals(0, command.getExitCode());
+        assertTrue(Files.exists(first.resolve(".bulk-verify-manifest")));
+
+        // Its own manifest, so nothing of the first tree is taken as already verified
+        command.run(new DefaultApplicationArguments("bulk", "verify", second.toString()));
+        assertEquals(1, command.getExitCode());
+        assertTrue(Files.exists(second.resolve(".bulk-verify-manifest")));
+
+        // Pointed at the first tree's manifest, it refuses to resume
+        Path shared = first.resolve(".bulk-verify-manifest");
+        List<String> before = Files.readAllLines(shared);
+        console.reset();
+        command.run(new DefaultApplicationArguments("bulk", "verify", second.toString(), "--manifest=" + shared));
+        assertEquals(2, command.getExitCode());
+        assertTrue(console.toString(StandardCharsets.UTF_8).contains("belongs to verify of " + first.toAbsolutePath().normalize()));
+        assertEquals(before, Files.readAllLines(shared));
+        assertThrows(BulkRun.ManifestMismatchException.class,
+                () -> new BulkRun(service, BulkRun.Mode.SIGN, first, second, shared, 2).run());
+    }
+}
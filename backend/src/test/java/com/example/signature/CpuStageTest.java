@@ -0,0 +1,78 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CpuStageTest {
+
+    @Test
+    void runsOnStageThreadAndUnwrapsErrors() throws Exception {
+        CpuStage stage = new CpuStage(2, 4, 1);
+        try {
+            assertTrue(stage.call(() -> Thread.currentThread().getName()).startsWith("cpu-"));
+            IOException thrown = assertThrows(IOException.class, () -> stage.call(() -> {
+                throw new IOException("boom");
+            }));
+            assertEquals("boom", thrown.getMessage());
+        } finally {
+            stage.destroy();
+        }
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        CpuStage stage = new CpuStage(1, 1, 7);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // One task running, one queued
+            Future<?> running = callers.submit(() -> stage.call(() -> release.await(10, TimeUnit.SECONDS)));
+            waitFor(() -> stage.active() == 1);
+            Future<?> queued = callers.submit(() -> stage.call(() -> true));
+            waitFor(() -> stage.queued() == 1);
+
+            CpuStage.OverloadedException e = assertThrows(CpuStage.OverloadedException.class, () -> stage.call(() -> true));
+            assertEquals(7, e.retryAfterSeconds());
+            assertEquals(1, stage.rejected());
+
+            release.countDown();
+            running.get(10, TimeUnit.SECONDS);
+            queued.get(10, TimeUnit.SECONDS);
+            assertTrue(stage.call(() -> true));
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            stage.destroy();
+        }
+    }
+
+    @Test
+    void workerThreadsRunInPlace() throws Exception {
+        CpuStage stage = new CpuStage(1, 1, 1);
+        ExecutorService workers = Executors.newSingleThreadExecutor(CpuStage.workerThreads("job-"));
+        try {
+            String thread = workers.submit(() -> stage.call(() -> Thread.currentThread().getName())).get();
+            assertTrue(thread.startsWith("job-"));
+        } finally {
+            workers.shutdownNow();
+            stage.destroy();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionConfigTest {
+
+    @Test
+    void shutsDownRequestExecutorWithContext() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        ExecutionConfig config = new ExecutionConfig(executor, 1000);
+        assertTrue(config.virtualThreads());
+        config.destroy();
+
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void platformThreadsNeedNoShutdown() {
+        ExecutionConfig config = new ExecutionConfig(null, 1000);
+        assertFalse(config.virtualThreads());
+        config.destroy();
+    }
+}
@@ -2,24 +2,80 @@ package com.example.signature;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability
 class HealthControllerTest {
 
     @Autowired
     MockMvc mockMvc;
 
+    @Autowired
+    ApplicationContext context;
+
     @Test
     void health() throws Exception {
         mockMvc.perform(get("/health"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.status").value("UP"));
     }
+
+    @Test
+    void healthIsUnavailableUntilReady() throws Exception {
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+        try {
+            mockMvc.perform(get("/health"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.status").value("STARTING"));
+        } finally {
+            AvailabilityChangeEvent.publish(context, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    @Test
+    void limits() throws Exception {
+        mockMvc.perform(get("/health/limits"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.virtualThreads").value(false))
+                .andExpect(jsonPath("$.cpu.threads").value(Runtime.getRuntime().availableProcessors()))
+                .andExpect(jsonPath("$.cpu.queueCapacity").value(64))
+                .andExpect(jsonPath("$.cpu.rejected").isNumber())
+                .andExpect(jsonPath("$.memory.budgetBytes").value(Runtime.getRuntime().maxMemory() / 2))
+                .andExpect(jsonPath("$.memory.maxPixels").value(268435456))
+                .andExpect(jsonPath("$.batch.queueCapacity").value(256))
+                .andExpect(jsonPath("$.jobs.threads").value(2))
+                .andExpect(jsonPath("$.jobs.queueCapacity").value(16));
+    }
+
+    @Test
+    void cache() throws Exception {
+        mockMvc.perform(get("/health/cache"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.enabled").value(true))
+                .andExpect(jsonPath("$.maxEntries").value(10000))
+                .andExpect(jsonPath("$.hits").isNumber())
+                .andExpect(jsonPath("$.hitRatio").isNumber());
+    }
+
+    @Test
+    void prometheus() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("signature_stage_seconds_bucket{format=\"png\",size=\"le_256k\",stage=\"digest\"")))
+                .andExpect(content().string(containsString("signature_verify_outcome_total{outcome=\"no_signature\"")))
+                .andExpect(content().string(containsString("signature_inflight{operation=\"sign\"")))
+                .andExpect(content().string(containsString("signature_memory_reserved_bytes")));
+    }
 }
@@ -0,0 +1,35 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageContextTest {
+
+    private byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    @Test
+    void decodesOnce() throws Exception {
+        ImageContext context = new ImageContext(sample("png"), ImageFormat.PNG);
+        BufferedImage image = context.image();
+        assertSame(image, context.image());
+        assertSame(image.getRaster(), context.raster());
+        assertEquals(4, image.getWidth());
+        assertEquals(3, image.getHeight());
+    }
+
+    @Test
+    void rejectsInvalidData() {
+        ImageContext context = new ImageContext(new byte[] {1, 2, 3}, ImageFormat.PNG);
+        assertThrows(IllegalArgumentException.class, context::image);
+    }
+}
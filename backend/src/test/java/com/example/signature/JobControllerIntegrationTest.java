@@ -0,0 +1,104 @@
+package com.example.signature;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class JobControllerIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    SignatureService service;
+
+    private byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(5, 4, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private String awaitDone(String id) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            String body = mockMvc.perform(get("/api/v1/jobs/" + id))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            String status = JsonPath.read(body, "$.status");
+            if (!status.equals("queued") && !status.equals("running")) {
+                return status;
+            }
+            assertTrue(System.nanoTime() < deadline, "job did not finish");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void submitPollAndDownload() throws Exception {
+        String body = mockMvc.perform(post("/api/v1/jobs/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(sample("jpg")))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists(HttpHeaders.LOCATION))
+                .andExpect(jsonPath("$.format").value("jpg"))
+                .andReturn().getResponse().getContentAsString();
+        String id = JsonPath.read(body, "$.id");
+
+        assertEquals("done", awaitDone(id));
+        mockMvc.perform(get("/api/v1/jobs/" + id))
+                .andExpect(jsonPath("$.result").value("/api/v1/jobs/" + id + "/result"))
+                .andExpect(jsonPath("$.expiresAt").isString());
+
+        byte[] signed = mockMvc.perform(get("/api/v1/jobs/" + id + "/result"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed.jpg"))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertTrue(service.verify(signed, "jpg"));
+    }
+
+    @Test
+    void multipartSubmitKeepsFilename() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "photo.png", "image/png", sample("png"));
+        String body = mockMvc.perform(multipart("/api/v1/jobs/sign").file(file))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString();
+        String id = JsonPath.read(body, "$.id");
+        assertEquals("done", awaitDone(id));
+        mockMvc.perform(get("/api/v1/jobs/" + id + "/result"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=photo.png"));
+    }
+
+    @Test
+    void errors() throws Exception {
+        mockMvc.perform(post("/api/v1/jobs/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("not an image".getBytes()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/jobs/unknown"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/v1/jobs/unknown/result"))
+                .andExpect(status().isNotFound());
+    }
+}
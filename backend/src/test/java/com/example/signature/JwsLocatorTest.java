@@ -0,0 +1,123 @@
+package com.example.signature;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.xmp.XmpDirectory;
+import org.apache.commons.imaging.formats.jpeg.xmp.JpegXmpRewriter;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwsLocatorTest {
+
+    private static final String JWS = "eyJhbGciOiJSUzI1NiJ9..c2lnbmF0dXJl";
+
+    private byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private byte[] jpegWithXmp(String xmp) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new JpegXmpRewriter().updateXmpXml(new ByteArrayInputStream(sample("jpg")), baos, xmp);
+        return baos.toByteArray();
+    }
+
+    private String xmp(String description) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">"
+                + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">"
+                + description
+                + "</rdf:RDF></x:xmpmeta>";
+    }
+
+    @Test
+    void jpegAttributeFormMatchesMetadataExtractor() throws Exception {
+        byte[] jpeg = jpegWithXmp(xmp(
+                "<rdf:Description xmlns:ns1=\"https://example.com/jws/1.0/\" ns1:JWS=\"" + JWS + "\"/>"));
+        XmpDirectory dir = ImageMetadataReader.readMetadata(new ByteArrayInputStream(jpeg))
+                .getFirstDirectoryOfType(XmpDirectory.class);
+        assertEquals(dir.getXMPMeta().getPropertyString(JwsLocator.JWS_NAMESPACE, "JWS"), JwsLocator.findInJpeg(jpeg));
+        assertEquals(JWS, JwsLocator.findInJpeg(jpeg));
+    }
+
+    @Test
+    void jpegOtherXmpSerializations() throws Exception {
+        assertEquals(JWS, JwsLocator.findInJpeg(jpegWithXmp(xmp(
+                "<rdf:Description rdf:about='' xmlns:jws='https://example.com/jws/1.0/' jws:JWS='" + JWS + "'/>"))));
+        assertEquals(JWS, JwsLocator.findInJpeg(jpegWithXmp(xmp(
+                "<rdf:Description rdf:about=\"\" xmlns:s=\"https://example.com/jws/1.0/\">"
+                        + "<s:JWS>" + JWS + "</s:JWS></rdf:Description>"))));
+    }
+
+    @Test
+    void jpegWithoutSignature() throws Exception {
+        assertNull(JwsLocator.findInJpeg(sample("jpg")));
+        assertNull(JwsLocator.findInJpeg(jpegWithXmp(xmp("<rdf:Description rdf:about=\"\"/>"))));
+        assertNull(JwsLocator.findInJpeg(new byte[] {1, 2, 3, 4}));
+    }
+
+    @Test
+    void pngTextChunks() throws Exception {
+        byte[] png = sample("png");
+        assertEquals(JWS, JwsLocator.findInPng(PngChunks.withJws(png, JWS)));
+
+        byte[] latin = (PngChunks.JWS_KEYWORD + "\0" + JWS).getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(JWS, JwsLocator.findInPng(withChunk(png, "tEXt", latin)));
+
+        ByteArrayOutputStream ztxt = new ByteArrayOutputStream();
+        ztxt.writeBytes((PngChunks.JWS_KEYWORD + "\0\0").getBytes(StandardCharsets.ISO_8859_1));
+        ztxt.writeBytes(deflate(JWS.getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(JWS, JwsLocator.findInPng(withChunk(png, "zTXt", ztxt.toByteArray())));
+
+        ByteArrayOutputStream itxt = new ByteArrayOutputStream();
+        itxt.writeBytes((PngChunks.JWS_KEYWORD + "\0\1\0en\0jws\0").getBytes(StandardCharsets.ISO_8859_1));
+        itxt.writeBytes(deflate(JWS.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(JWS, JwsLocator.findInPng(withChunk(png, "iTXt", itxt.toByteArray())));
+    }
+
+    @Test
+    void pngWithoutSignature() throws Exception {
+        byte[] png = sample("png");
+        assertNull(JwsLocator.findInPng(png));
+        byte[] other = "Comment\0jws is not here".getBytes(StandardCharsets.ISO_8859_1);
+        assertNull(JwsLocator.findInPng(withChunk(png, "tEXt", other)));
+    }
+
+    private static byte[] deflate(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(out)) {
+            z.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // Inserts a chunk right after IHDR.
+    private static byte[] withChunk(byte[] png, String type, byte[] data) throws Exception {
+        int afterIhdr = PngChunks.SIGNATURE.length + 12 + PngChunks.chunkLength(ByteBuffer.wrap(png), PngChunks.SIGNATURE.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(png, 0, afterIhdr);
+        DataOutputStream d = new DataOutputStream(out);
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        d.writeInt(data.length);
+        d.write(name);
+        d.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        d.writeInt((int) crc.getValue());
+        out.write(png, afterIhdr, png.length - afterIhdr);
+        return out.toByteArray();
+    }
+}
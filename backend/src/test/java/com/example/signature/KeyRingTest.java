@@ -0,0 +1,131 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.jwk.JWK;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyRingTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] sample(int rgb) throws Exception {
+        BufferedImage img = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(2, 1, rgb);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private static SignatureService service(KeyRing keys, VerificationCache cache) {
+        CpuStage cpu = new CpuStage(1, 4, 1);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        return new SignatureService(keys, 268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(), new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+    }
+
+    private void writePair(String name, KeyPair pair) throws Exception {
+        Files.writeString(dir.resolve(name + ".key"), pem(pair.getPrivate()));
+        Files.writeString(dir.resolve(name + ".pub"), pem(pair.getPublic()));
+    }
+
+    private static String pem(Key key) {
+        return "-----BEGIN KEY-----\n" + Base64.getMimeEncoder().encodeToString(key.getEncoded()) + "\n-----END KEY-----\n";
+    }
+
+    @Test
+    void signaturesCarryKidOfSigningKey() throws Exception {
+        KeyPair pair = JwsKeys.generate(JWSAlgorithm.ES256);
+        VerificationCache cache = new VerificationCache(0, 0);
+        SignatureService service = service(new KeyRing(SigningKeys.of(pair), cache), cache);
+
+        byte[] signed = service.sign(sample(1), "png");
+        String kid = JwsKeys.thumbprint(pair.getPublic());
+        assertEquals(kid, service.inspect(signed, "png").getKeyID());
+        assertEquals(kid, service.verifyResult(ByteBuffer.wrap(signed), "png").keyId());
+    }
+
+    @Test
+    void signaturesWithoutKidFallBackToAlgorithm() throws Exception {
+        KeyPair pair = JwsKeys.generate(JWSAlgorithm.RS256);
+        VerificationCache cache = new VerificationCache(0, 0);
+        SignatureService service = service(new KeyRing(SigningKeys.of(pair), cache), cache);
+
+        byte[] png = sample(2);
+        byte[] digest = PixelDigest.of(new ImageContext(png, ImageFormat.PNG).raster().getDataBuffer());
+        JWSObject legacy = new JWSObject(new JWSHeader(JWSAlgorithm.RS256), new Payload(digest));
+        legacy.sign(JwsKeys.signer(pair));
+        assertTrue(service.verify(PngChunks.withJws(png, legacy.serialize(true)), "png"));
+
+        JWSObject unknown = new JWSObject(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("unknown").build(), new Payload(digest));
+        unknown.sign(JwsKeys.signer(pair));
+        assertFalse(service.verify(PngChunks.withJws(png, unknown.serialize(true)), "png"));
+    }
+
+    @Test
+    void rotatesKeysFromDirectoryWithoutRestart() throws Exception {
+        KeyPair first = JwsKeys.generate(JWSAlgorithm.ES256);
+        writePair("2024-01", first);
+        KeyConfig config = new KeyConfig(new MockEnvironment()
+                .withProperty("signature.algorithm", "ES256")
+                .withProperty("signature.keys.dir", dir.toString()));
+        VerificationCache cache = new VerificationCache(100, 60);
+        KeyRing keys = config.keyRing(config.signingKeys(), cache, 0);
+        SignatureService service = service(keys, cache);
+        assertEquals(JwsKeys.thumbprint(first.getPublic()), keys.active().kid());
+
+        byte[] old = service.sign(sample(3), "png");
+        assertTrue(service.verify(old, "png"));
+        assertFalse(keys.reload());
+
+        // A later pair takes over signing; the earlier public key stays trusted
+        KeyPair second = JwsKeys.generate(JWSAlgorithm.ES256);
+        writePair("2024-02", second);
+        assertTrue(keys.reload());
+        assertEquals(JwsKeys.thumbprint(second.getPublic()), keys.active().kid());
+        assertEquals(JwsKeys.thumbprint(second.getPublic()), service.inspect(service.sign(sample(4), "png"), "png").getKeyID());
+        assertTrue(service.verify(old, "png"));
+        assertEquals(List.of(JwsKeys.thumbprint(second.getPublic()), JwsKeys.thumbprint(first.getPublic())),
+                keys.jwkSet().getKeys().stream().map(JWK::getKeyID).toList());
+
+        // An unreadable key is not applied
+        Files.writeString(dir.resolve("broken.pub"), "-----BEGIN KEY-----\nAAAA\n-----END KEY-----\n");
+        assertFalse(keys.reload());
+        assertEquals(JwsKeys.thumbprint(second.getPublic()), keys.active().kid());
+        Files.delete(dir.resolve("broken.pub"));
+
+        // Retiring the old public key stops its signatures verifying, cached verdicts included
+        Files.delete(dir.resolve("2024-01.pub"));
+        assertTrue(keys.reload());
+        assertFalse(service.verify(old, "png"));
+        assertEquals(1, keys.jwkSet().getKeys().size());
+    }
+
+    @Test
+    void jwkSetHoldsOnlyPublicKeys() throws Exception {
+        KeyPair pair = JwsKeys.generate(JWSAlgorithm.EdDSA);
+        KeyRing keys = new KeyRing(SigningKeys.of(pair), new VerificationCache(0, 0));
+        JWK jwk = keys.jwkSet().getKeys().get(0);
+        assertFalse(jwk.isPrivate());
+        assertEquals(JWSAlgorithm.EdDSA, jwk.getAlgorithm());
+        assertEquals(JwsKeys.thumbprint(pair.getPublic()), jwk.getKeyID());
+    }
+}
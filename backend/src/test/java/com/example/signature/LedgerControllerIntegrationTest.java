@@ -0,0 +1,92 @@
+package com.example.signature;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class LedgerControllerIntegrationTest {
+
+    @TempDir
+    static Path ledgerDir;
+
+    @DynamicPropertySource
+    static void ledger(DynamicPropertyRegistry registry) {
+        registry.add("signature.ledger.dir", ledgerDir::toString);
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    SigningLedger ledger;
+
+    @Test
+    void verifyReportsProvenanceUntilRevoked() throws Exception {
+        BufferedImage img = new BufferedImage(6, 5, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(1, 1, 0x123456);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpg", baos);
+        byte[] signed = mockMvc.perform(multipart("/api/v1/sign")
+                        .file(new MockMultipartFile("file", "img.jpg", "image/jpeg", baos.toByteArray())))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        MockMultipartFile signedFile = new MockMultipartFile("file", "img.jpg", "image/jpeg", signed);
+
+        String body = mockMvc.perform(multipart("/api/v1/verify").file(signedFile))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(true))
+                .andExpect(jsonPath("$.ledger.format").value("jpg"))
+                .andExpect(jsonPath("$.ledger.size").value(baos.size()))
+                .andExpect(jsonPath("$.ledger.revoked").value(false))
+                .andReturn().getResponse().getContentAsString();
+        String signature = JsonPath.read(body, "$.ledger.signature");
+
+        mockMvc.perform(get("/api/v1/ledger/" + signature))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.kid").value((String) JsonPath.read(body, "$.ledger.kid")));
+        // Revoking is not on the public API, and the actuator does not expose it unless asked to
+        mockMvc.perform(post("/api/v1/ledger/" + signature + "/revoke"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/actuator/ledger/" + signature))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(multipart("/api/v1/verify").file(signedFile))
+                .andExpect(jsonPath("$.valid").value(true));
+
+        ledger.revoke(signature);
+
+        mockMvc.perform(multipart("/api/v1/verify").file(signedFile))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(false))
+                .andExpect(jsonPath("$.revoked").value(true))
+                .andExpect(jsonPath("$.ledger.signature").value(signature));
+    }
+
+    @Test
+    void unknownOrMalformedSignatureIds() throws Exception {
+        String unknown = "A".repeat(43);
+        mockMvc.perform(get("/api/v1/ledger/" + unknown))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/v1/ledger/short"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Invalid signature id"));
+    }
+}
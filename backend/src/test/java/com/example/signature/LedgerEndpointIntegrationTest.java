@@ -0,0 +1,104 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Revocation is served only by the management server, on its own port. */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "management.server.port=0",
+        "management.endpoints.web.exposure.include=prometheus,metrics,ledger"})
+class LedgerEndpointIntegrationTest {
+
+    @TempDir
+    static Path ledgerDir;
+
+    @DynamicPropertySource
+    static void ledger(DynamicPropertyRegistry registry) {
+        registry.add("signature.ledger.dir", ledgerDir::toString);
+    }
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @LocalManagementPort
+    int managementPort;
+
+    private static MultiValueMap<String, Object> upload(byte[] data) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("file", new ByteArrayResource(data) {
+            @Override
+            public String getFilename() {
+                return "img.png";
+            }
+        });
+        return parts;
+    }
+
+    private static HttpEntity<String> json() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new HttpEntity<>("{}", headers);
+    }
+
+    private ResponseEntity<Map<String, Object>> revoke(String url) {
+        return rest.exchange(url, HttpMethod.POST, json(), new ParameterizedTypeReference<Map<String, Object>>() {
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> verify(byte[] signed) {
+        return rest.postForObject("/api/v1/verify", upload(signed), Map.class);
+    }
+
+    @Test
+    void revokesOnlyThroughManagementPort() throws Exception {
+        BufferedImage img = new BufferedImage(7, 4, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        byte[] signed = rest.postForObject("/api/v1/sign", upload(baos.toByteArray()), byte[].class);
+        Map<?, ?> entry = (Map<?, ?>) verify(signed).get("ledger");
+        String signature = (String) entry.get("signature");
+
+        assertEquals(404, rest.postForEntity("/actuator/ledger/" + signature, json(), String.class)
+                .getStatusCode().value());
+        assertEquals(404, rest.postForEntity("/api/v1/ledger/" + signature + "/revoke", null, String.class)
+                .getStatusCode().value());
+        assertEquals(true, verify(signed).get("valid"));
+
+        String management = "http://localhost:" + managementPort + "/actuator/ledger/";
+        ResponseEntity<Map<String, Object>> revoked = revoke(management + signature);
+        assertEquals(200, revoked.getStatusCode().value());
+        assertEquals(true, revoked.getBody().get("revoked"));
+        assertEquals(404, revoke(management + "A".repeat(43)).getStatusCode().value());
+        ResponseEntity<Map<String, Object>> invalid = revoke(management + "short");
+        assertEquals(400, invalid.getStatusCode().value());
+        assertEquals("Invalid signature id", invalid.getBody().get("error"));
+
+        Map<String, Object> result = verify(signed);
+        assertEquals(false, result.get("valid"));
+        assertEquals(true, result.get("revoked"));
+    }
+}
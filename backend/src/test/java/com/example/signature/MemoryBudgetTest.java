@@ -0,0 +1,83 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryBudgetTest {
+
+    private static byte[] write(BufferedImage img, String format) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    @Test
+    void headerSizeMatchesDecoder() throws Exception {
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED};
+        for (int type : types) {
+            ImageContext png = new ImageContext(write(new BufferedImage(45, 33, type), "png"), ImageFormat.PNG);
+            ImageHeader header = ImageHeader.read(png.data(), ImageFormat.PNG);
+            assertEquals(45, header.width());
+            assertEquals(33, header.height());
+            assertEquals(png.rasterBytes(), header.rasterBytes(), "png type " + type);
+        }
+        for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            ImageContext jpeg = new ImageContext(write(new BufferedImage(45, 33, type), "jpg"), ImageFormat.JPEG);
+            assertEquals(jpeg.rasterBytes(), ImageHeader.read(jpeg.data(), ImageFormat.JPEG).rasterBytes(), "jpeg type " + type);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> ImageHeader.read(ByteBuffer.wrap(new byte[] {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9}), ImageFormat.JPEG));
+    }
+
+    @Test
+    void refusesImagesPastLimits() throws Exception {
+        MemoryBudget budget = new MemoryBudget(1 << 20, 1000, 100, 0, 1);
+        budget.check(new ImageHeader(100, 10, 3, 8));
+        assertThrows(UploadSpooler.TooLargeException.class, () -> budget.check(new ImageHeader(101, 1, 3, 8)));
+        assertThrows(UploadSpooler.TooLargeException.class, () -> budget.check(new ImageHeader(100, 11, 3, 8)));
+        assertThrows(UploadSpooler.TooLargeException.class, () -> budget.reserve((1 << 20) + 1));
+        assertEquals(3, budget.rejected());
+    }
+
+    @Test
+    void waitsForBudgetThenGivesUp() throws Exception {
+        MemoryBudget budget = new MemoryBudget(1 << 20, 1000, 100, 50, 7);
+        MemoryBudget.Reservation held = budget.reserve(600 << 10);
+        assertEquals(600 << 10, budget.reservedBytes());
+
+        CpuStage.OverloadedException e = assertThrows(CpuStage.OverloadedException.class, () -> budget.reserve(600 << 10));
+        assertEquals(7, e.retryAfterSeconds());
+        MemoryBudget.Reservation small = budget.reserve(400 << 10);
+        assertEquals(1000 << 10, budget.reservedBytes());
+        small.close();
+
+        // A waiting reservation goes through once the budget is returned
+        MemoryBudget patient = new MemoryBudget(1 << 20, 1000, 100, 10_000, 1);
+        MemoryBudget.Reservation first = patient.reserve(1 << 20);
+        CompletableFuture<MemoryBudget.Reservation> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return patient.reserve(1 << 20);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        while (patient.waiting() == 0) {
+            Thread.sleep(5);
+        }
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        held.close();
+        held.close();
+        assertEquals(0, budget.reservedBytes());
+        assertEquals(0, patient.reservedBytes());
+    }
+}
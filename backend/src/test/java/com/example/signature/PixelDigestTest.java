@@ -0,0 +1,113 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PixelDigestTest {
+
+    // Reference implementation of the original per-element scheme; signed images depend on it.
+    private static byte[] legacy(DataBuffer buffer) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < buffer.getSize(); i++) {
+            int val = buffer.getElem(i);
+            md.update((byte) (val >> 24));
+            md.update((byte) (val >> 16));
+            md.update((byte) (val >> 8));
+            md.update((byte) val);
+        }
+        return md.digest();
+    }
+
+    private static BufferedImage noise(int type, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    static Stream<Integer> imageTypes() {
+        return IntStream.rangeClosed(BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_INDEXED).boxed();
+    }
+
+    static Stream<DataBuffer> rawBuffers() {
+        Random random = new Random(42);
+        int n = 70_001; // spans several chunks with a ragged tail
+        byte[] bytes = new byte[n];
+        short[] shorts = new short[n];
+        int[] ints = new int[n];
+        float[] floats = new float[n];
+        double[] doubles = new double[n];
+        random.nextBytes(bytes);
+        for (int i = 0; i < n; i++) {
+            shorts[i] = (short) random.nextInt();
+            ints[i] = random.nextInt();
+            floats[i] = random.nextFloat() * 1e6f - 5e5f;
+            doubles[i] = random.nextDouble() * 1e6 - 5e5;
+        }
+        return Stream.of(
+                new DataBufferByte(bytes, n),
+                new DataBufferByte(bytes, n - 17, 17),
+                new DataBufferUShort(shorts, n),
+                new DataBufferUShort(shorts, n - 5, 5),
+                new DataBufferShort(shorts, n),
+                new DataBufferShort(shorts, n - 3, 3),
+                new DataBufferInt(ints, n),
+                new DataBufferInt(ints, n - 9, 9),
+                new DataBufferFloat(floats, n),
+                new DataBufferDouble(doubles, n),
+                new DataBufferByte(new byte[0], 0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("imageTypes")
+    void matchesLegacyForEveryImageType(int type) throws Exception {
+        DataBuffer buffer = noise(type, 157, 131).getRaster().getDataBuffer();
+        assertArrayEquals(legacy(buffer), PixelDigest.of(buffer));
+    }
+
+    @ParameterizedTest
+    @MethodSource("rawBuffers")
+    void matchesLegacyForEveryBufferType(DataBuffer buffer) throws Exception {
+        assertArrayEquals(legacy(buffer), PixelDigest.of(buffer));
+    }
+
+    @Test
+    void reusedInstanceIsReset() throws Exception {
+        DataBuffer a = noise(BufferedImage.TYPE_INT_ARGB, 64, 64).getRaster().getDataBuffer();
+        DataBuffer b = noise(BufferedImage.TYPE_3BYTE_BGR, 64, 64).getRaster().getDataBuffer();
+        PixelDigest.of(a);
+        assertArrayEquals(legacy(b), PixelDigest.of(b));
+    }
+
+    @Test
+    void knownDigestIsStable() {
+        BufferedImage img = new BufferedImage(3, 2, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 37);
+        }
+        assertEquals("ca8743d2715262fc3c50028017cec4a1461bba8ffbf88aaaf3fb51a594b3774f",
+                HexFormat.of().formatHex(PixelDigest.of(img.getRaster().getDataBuffer())));
+    }
+}
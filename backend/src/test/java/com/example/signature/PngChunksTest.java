@@ -0,0 +1,83 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PngChunksTest {
+
+    private byte[] sample() throws Exception {
+        BufferedImage img = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(3, 5, 0x123456);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private List<String> chunkTypes(byte[] png) {
+        List<String> types = new ArrayList<>();
+        int pos = PngChunks.SIGNATURE.length;
+        while (pos < png.length) {
+            int length = PngChunks.chunkLength(ByteBuffer.wrap(png), pos);
+            types.add(new String(png, pos + 4, 4, StandardCharsets.US_ASCII));
+            CRC32 crc = new CRC32();
+            crc.update(png, pos + 4, length + 4);
+            assertEquals((int) crc.getValue(), PngChunks.readInt(ByteBuffer.wrap(png), pos + 8 + length));
+            pos += 12 + length;
+        }
+        return types;
+    }
+
+    @Test
+    void insertsJwsBeforeFirstIdatAndCopiesTheRest() throws Exception {
+        byte[] png = sample();
+        byte[] signed = PngChunks.withJws(png, "header..signature");
+
+        List<String> types = chunkTypes(signed);
+        assertEquals(types.indexOf("IDAT") - 1, types.indexOf("iTXt"));
+
+        int idat = chunkTypes(png).indexOf("IDAT");
+        int splitAt = offsetOfChunk(png, idat);
+        int inserted = signed.length - png.length;
+        assertArrayEquals(Arrays.copyOfRange(png, 0, splitAt), Arrays.copyOfRange(signed, 0, splitAt));
+        assertArrayEquals(Arrays.copyOfRange(png, splitAt, png.length),
+                Arrays.copyOfRange(signed, splitAt + inserted, signed.length));
+        assertTrue(new String(signed, splitAt, inserted, StandardCharsets.UTF_8).contains("header..signature"));
+    }
+
+    @Test
+    void replacesPreviousSignature() throws Exception {
+        byte[] once = PngChunks.withJws(sample(), "first..sig");
+        byte[] twice = PngChunks.withJws(once, "second..sig");
+        assertEquals(1, chunkTypes(twice).stream().filter("iTXt"::equals).count());
+        String text = new String(twice, StandardCharsets.ISO_8859_1);
+        assertFalse(text.contains("first..sig"));
+        assertTrue(text.contains("second..sig"));
+    }
+
+    @Test
+    void rejectsTruncatedData() throws Exception {
+        byte[] png = sample();
+        assertThrows(IllegalArgumentException.class,
+                () -> PngChunks.withJws(Arrays.copyOf(png, 40), "h..s"));
+        assertThrows(IllegalArgumentException.class, () -> PngChunks.withJws(new byte[] {1, 2, 3}, "h..s"));
+    }
+
+    private int offsetOfChunk(byte[] png, int index) {
+        int pos = PngChunks.SIGNATURE.length;
+        for (int i = 0; i < index; i++) {
+            pos += 12 + PngChunks.chunkLength(ByteBuffer.wrap(png), pos);
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignJobsTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong();
+    private final VerificationCache cache = new VerificationCache(0, 0);
+    private final CpuStage cpu = new CpuStage(1, 4, 1);
+    private final MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+    private SignatureService service;
+    private SignJobs jobs;
+
+    private SignJobs jobs(long maxStoreBytes) throws Exception {
+        return jobs(maxStoreBytes, budget);
+    }
+
+    private SignJobs jobs(long maxStoreBytes, MemoryBudget budget) throws Exception {
+        service = new SignatureService(new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache),
+                268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(), new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+        jobs = new SignJobs(service, new UploadSpooler(1024, 1 << 20, ""), 1, 4, dir, 60, maxStoreBytes, 5, now::get);
+        return jobs;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (jobs != null) {
+            jobs.destroy();
+        }
+        cpu.destroy();
+    }
+
+    private static byte[] sample(int rgb) throws Exception {
+        BufferedImage img = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(3, 3, rgb);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private static SignJobs.Job await(SignJobs.Job job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (job.status() == SignJobs.Status.QUEUED || job.status() == SignJobs.Status.RUNNING) {
+            assertTrue(System.nanoTime() < deadline, "job did not finish");
+            Thread.sleep(10);
+        }
+        return job;
+    }
+
+    private SignJobs.Job submit(byte[] data) throws Exception {
+        return jobs.submit(new ByteArrayInputStream(data), data.length, "in.png");
+    }
+
+    @Test
+    void signsInBackgroundAndExpiresAfterTtl() throws Exception {
+        jobs(1 << 20);
+        SignJobs.Job job = await(submit(sample(1)));
+        assertEquals(SignJobs.Status.DONE, job.status());
+        assertEquals("in.png", job.filename());
+        Path result = jobs.result(job);
+        assertTrue(service.verify(Files.readAllBytes(result), "png"));
+        assertEquals(Files.size(result), job.resultBytes());
+        assertFalse(Files.exists(dir.resolve(job.id() + ".in")));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        jobs.cleanUp();
+        assertSame(job, jobs.get(job.id()));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        jobs.cleanUp();
+        assertNull(jobs.get(job.id()));
+        assertFalse(Files.exists(result));
+    }
+
+    @Test
+    void evictsOldestResultsBeyondStoreLimit() throws Exception {
+        jobs(1 << 20);
+        long size = await(submit(sample(2))).resultBytes();
+        jobs.destroy();
+
+        jobs(2 * size - 1);
+        SignJobs.Job first = await(submit(sample(2)));
+        now.incrementAndGet();
+        SignJobs.Job second = await(submit(sample(2)));
+        assertNull(jobs.get(first.id()));
+        assertFalse(Files.exists(jobs.result(first)));
+        assertSame(second, jobs.get(second.id()));
+        assertEquals(size, jobs.storedBytes());
+    }
+
+    @Test
+    void rejectsContentThatIsNotAnImage() throws Exception {
+        jobs(1 << 20);
+        assertThrows(IllegalArgumentException.class, () -> submit("not an image".getBytes()));
+        assertThrows(UploadSpooler.TooLargeException.class, () -> submit(new byte[(1 << 20) + 1]));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void removesFilesLeftByEarlierRun() throws Exception {
+        Files.write(dir.resolve("stale.out"), new byte[] {1});
+        Files.write(dir.resolve("keep.txt"), new byte[] {1});
+        jobs(1 << 20);
+        assertFalse(Files.exists(dir.resolve("stale.out")));
+        assertTrue(Files.exists(dir.resolve("keep.txt")));
+    }
+
+    @Test
+    void jobWaitsForMemoryInsteadOfFailing() throws Exception {
+        MemoryBudget small = new MemoryBudget(1 << 20, 268435456L, 65535, 50, 1);
+        jobs(1 << 20, small);
+        MemoryBudget.Reservation held = small.reserve(1 << 20);
+        SignJobs.Job job = submit(sample(6));
+        while (small.waiting() == 0) {
+            Thread.sleep(5);
+        }
+        // Well past the queue timeout a request would get
+        Thread.sleep(300);
+        assertEquals(SignJobs.Status.RUNNING, job.status());
+
+        held.close();
+        assertEquals(SignJobs.Status.DONE, await(job).status());
+        assertTrue(service.verify(Files.readAllBytes(jobs.result(job)), "png"));
+        assertEquals(0, small.rejected());
+    }
+}
@@ -1,17 +1,27 @@
 package com.example.signature;
 
+import com.nimbusds.jose.JWSObject;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
@@ -21,8 +31,15 @@ class SignatureControllerIntegrationTest {
     @Autowired
     MockMvc mockMvc;
 
+    @Autowired
+    CpuStage cpu;
+
     private byte[] sample(String format) throws Exception {
-        BufferedImage img = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        return sample(format, 2);
+    }
+
+    private byte[] sample(String format, int size) throws Exception {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ImageIO.write(img, format, baos);
         return baos.toByteArray();
@@ -37,8 +54,162 @@ class SignatureControllerIntegrationTest {
                 .andReturn().getResponse().getContentAsByteArray();
 
         MockMultipartFile signedFile = new MockMultipartFile("file", "img.png", "image/png", signed);
+        mockMvc.perform(multipart("/api/v1/verify").file(signedFile))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(true))
+                .andExpect(jsonPath("$.digest").isString())
+                .andExpect(jsonPath("$.signature").isString())
+                .andExpect(jsonPath("$.ledger").doesNotExist());
+        mockMvc.perform(get("/api/v1/ledger/" + "A".repeat(43)))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Signing ledger is disabled"));
+    }
+
+    @Test
+    void rawBodyRoundTrip() throws Exception {
+        byte[] signed = mockMvc.perform(post("/api/v1/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(sample("jpg")))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=signed.jpg"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        mockMvc.perform(post("/api/v1/verify")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(signed))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(true));
+    }
+
+    @Test
+    void rawBodyErrors() throws Exception {
+        mockMvc.perform(post("/api/v1/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[0]))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Missing or empty request body"));
+        mockMvc.perform(post("/api/v1/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[] {1, 2, 3}))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("No extension"));
+    }
+
+    @Test
+    void oversizedImageIsRejectedBeforeDecoding() throws Exception {
+        // A 2x2 PNG whose header claims 20000x20000: 1.2 GB once decoded
+        byte[] bomb = sample("png");
+        byte[] signed = mockMvc.perform(multipart("/api/v1/sign")
+                        .file(new MockMultipartFile("file", "img.png", "image/png", bomb)))
+                .andReturn().getResponse().getContentAsByteArray();
+        for (byte[] image : new byte[][] {bomb, signed}) {
+            ByteBuffer.wrap(image).putInt(16, 20000).putInt(20, 20000);
+        }
+
+        mockMvc.perform(multipart("/api/v1/sign")
+                        .file(new MockMultipartFile("file", "img.png", "image/png", bomb)))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.error").value("Image of 400000000 pixels exceeds the limit of 268435456"));
+        mockMvc.perform(post("/api/v1/verify")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(signed))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void overloadIsRejectedWithRetryAfter() throws Exception {
+        // An image no other test verifies, so the verdict cannot come from the cache
+        byte[] signed = mockMvc.perform(multipart("/api/v1/sign")
+                        .file(new MockMultipartFile("file", "img.png", "image/png", sample("png", 3))))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Occupy every CPU thread and queue slot
+        int slots = cpu.threads() + cpu.queueCapacity();
+        ExecutorService callers = Executors.newFixedThreadPool(slots);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < slots; i++) {
+                callers.submit(() -> cpu.call(() -> release.await(30, TimeUnit.SECONDS)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cpu.active() + cpu.queued() < slots && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            mockMvc.perform(multipart("/api/v1/verify")
+                            .file(new MockMultipartFile("file", "img.png", "image/png", signed)))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            release.countDown();
+            callers.shutdown();
+            callers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void inspect() throws Exception {
+        MockMultipartFile unsigned = new MockMultipartFile("file", "img.png", "image/png", sample("png"));
+        mockMvc.perform(multipart("/api/v1/verify/inspect").file(unsigned))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.format").value("png"))
+                .andExpect(jsonPath("$.signed").value(false));
+
+        byte[] signed = mockMvc.perform(multipart("/api/v1/sign").file(unsigned))
+                .andReturn().getResponse().getContentAsByteArray();
+        // No extension: the format comes from the content
+        MockMultipartFile signedFile = new MockMultipartFile("file", "upload", "application/octet-stream", signed);
+        mockMvc.perform(multipart("/api/v1/verify/inspect").file(signedFile))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.signed").value(true))
+                .andExpect(jsonPath("$.header.alg").value("RS256"))
+                .andExpect(jsonPath("$.header.dgst").value("merkle-v1"));
         mockMvc.perform(multipart("/api/v1/verify").file(signedFile))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.valid").value(true));
     }
+
+    @Test
+    void jwksPublishesSigningKey() throws Exception {
+        byte[] signed = mockMvc.perform(post("/api/v1/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(sample("png", 4)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        String kid = JWSObject.parse(JwsLocator.findInPng(signed)).getHeader().getKeyID();
+
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.keys[0].kid").value(kid))
+                .andExpect(jsonPath("$.keys[0].use").value("sig"))
+                .andExpect(jsonPath("$.keys[0].d").doesNotExist());
+    }
+
+    @Test
+    void verifyLocatesTamperedTiles() throws Exception {
+        BufferedImage img = new BufferedImage(100, 200, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        byte[] signed = mockMvc.perform(post("/api/v1/sign")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(baos.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Same signature over an image with one pixel changed in the third 64-row tile
+        img.setRGB(10, 150, 0xffffff);
+        baos.reset();
+        ImageIO.write(img, "png", baos);
+        byte[] tampered = PngChunks.withJws(baos.toByteArray(), JwsLocator.findInPng(signed));
+
+        mockMvc.perform(post("/api/v1/verify")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(tampered))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.valid").value(false))
+                .andExpect(jsonPath("$.tampered.length()").value(1))
+                .andExpect(jsonPath("$.tampered[0].tile").value(2))
+                .andExpect(jsonPath("$.tampered[0].fromRow").value(128))
+                .andExpect(jsonPath("$.tampered[0].toRow").value(192));
+    }
 }
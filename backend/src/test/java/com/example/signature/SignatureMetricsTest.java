@@ -0,0 +1,73 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignatureMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final VerificationCache cache = new VerificationCache(0, 0);
+    private final CpuStage cpu = new CpuStage(1, 4, 1);
+    private final MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+    private final SignatureMetrics metrics = new SignatureMetrics(registry, cpu, cache, budget);
+
+    private static byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private long count(String stage, String format) {
+        return registry.get("signature.stage").tag("stage", stage).tag("format", format).tag("size", "le_256k")
+                .timer().count();
+    }
+
+    private double outcome(String outcome) {
+        return registry.get("signature.verify.outcome").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void timesEachStageAndCountsOutcomes() throws Exception {
+        SignatureService service = new SignatureService(
+                new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache),
+                268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(), metrics);
+
+        byte[] signed = service.sign(sample("jpg"), "jpg");
+        assertEquals(1, count("decode", "jpeg"));
+        assertEquals(1, count("digest", "jpeg"));
+        assertEquals(1, count("sign", "jpeg"));
+        assertEquals(1, count("embed", "jpeg"));
+
+        assertTrue(service.verify(signed, "jpg"));
+        assertFalse(service.verify(sample("png"), "png"));
+        assertFalse(service.verify("not an image".getBytes(), "txt"));
+        KeyRing other = new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), new VerificationCache(0, 0));
+        byte[] untrusted = new SignatureService(other, 268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(),
+                new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget)).sign(sample("jpg"), "jpg");
+        assertFalse(service.verify(untrusted, "jpg"));
+
+        assertEquals(2, count("extract", "jpeg"));
+        assertEquals(1, count("extract", "png"));
+        assertEquals(1, outcome("valid"));
+        assertEquals(1, outcome("no_signature"));
+        assertEquals(1, outcome("unsupported"));
+        assertEquals(1, outcome("invalid"));
+        assertEquals(0, registry.get("signature.inflight").tag("operation", "verify").gauge().value());
+    }
+
+    @Test
+    void bucketsByUploadSize() {
+        assertSame(metrics.timer(SignatureMetrics.Stage.DIGEST, ImageFormat.PNG, 256 << 10),
+                metrics.timer(SignatureMetrics.Stage.DIGEST, ImageFormat.PNG, 0));
+        assertEquals("le_4m", metrics.timer(SignatureMetrics.Stage.DIGEST, ImageFormat.PNG, (256 << 10) + 1).getId().getTag("size"));
+        assertEquals("gt_32m", metrics.timer(SignatureMetrics.Stage.DIGEST, ImageFormat.PNG, 1L << 31).getId().getTag("size"));
+    }
+}
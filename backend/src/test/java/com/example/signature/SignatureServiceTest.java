@@ -1,5 +1,7 @@
 package com.example.signature;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -7,6 +9,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +19,9 @@ class SignatureServiceTest {
     @Autowired
     SignatureService service;
 
+    @Autowired
+    VerificationCache cache;
+
     private byte[] sample(String format) throws Exception {
         BufferedImage img = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -36,4 +42,60 @@ class SignatureServiceTest {
         byte[] signed = service.sign(img, "png");
         assertTrue(service.verify(signed, "png"));
     }
+
+    @Test
+    void verifySniffsMislabeledFormat() throws Exception {
+        byte[] signed = service.sign(sample("png"), "jpg");
+        assertTrue(service.verify(signed, "jpg"));
+    }
+
+    @Test
+    void signsFromDirectBuffer() throws Exception {
+        for (String format : new String[] {"png", "jpg"}) {
+            byte[] img = sample(format);
+            // Offset and direct, like a slice of a mapped spool file
+            ByteBuffer direct = ByteBuffer.allocateDirect(img.length + 3);
+            direct.position(3);
+            direct.put(img).position(3);
+            byte[] signed = service.sign(direct, format).toByteArray();
+            assertTrue(service.verify(signed, format));
+
+            ByteBuffer signedDirect = ByteBuffer.allocateDirect(signed.length).put(signed).flip();
+            assertTrue(service.verify(signedDirect, format));
+        }
+    }
+
+    @Test
+    void repeatVerifyIsServedFromCache() throws Exception {
+        BufferedImage img = new BufferedImage(5, 3, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(1, 1, 0xabcdef);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        ByteBuffer signed = ByteBuffer.wrap(service.sign(baos.toByteArray(), "png"));
+
+        long hits = cache.hits();
+        VerificationCache.Result first = service.verifyResult(signed, "png");
+        assertTrue(first.valid());
+        assertEquals(JWSAlgorithm.RS256, first.algorithm());
+        assertNotNull(first.keyId());
+        assertEquals(hits, cache.hits());
+
+        assertEquals(first, service.verifyResult(signed, "png"));
+        assertEquals(hits + 1, cache.hits());
+    }
+
+    @Test
+    void unsignedAndGarbageDoNotVerify() throws Exception {
+        assertFalse(service.verify(sample("png"), "png"));
+        assertFalse(service.verify(sample("jpg"), "jpg"));
+        assertFalse(service.verify(new byte[] {1, 2, 3}, "png"));
+    }
+
+    @Test
+    void inspectReadsHeaderOnly() throws Exception {
+        assertNull(service.inspect(sample("jpg"), "jpg"));
+        JWSHeader header = service.inspect(service.sign(sample("jpg"), "jpg"), "jpg");
+        assertNotNull(header);
+        assertEquals(JWSAlgorithm.RS256, header.getAlgorithm());
+    }
 }
@@ -0,0 +1,113 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.mock.env.MockEnvironment;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigningAlgorithmsTest {
+
+    private static byte[] sample(String format) throws Exception {
+        BufferedImage img = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(1, 1, 0x336699);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    private static SignatureService service(SigningKeys keys) throws Exception {
+        VerificationCache cache = new VerificationCache(0, 0);
+        CpuStage cpu = new CpuStage(1, 4, 1);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        return new SignatureService(new KeyRing(keys, cache), 268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(),
+                new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+    }
+
+    private static String pem(Key key) {
+        return "-----BEGIN KEY-----\n" + Base64.getMimeEncoder().encodeToString(key.getEncoded()) + "\n-----END KEY-----\n";
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RS256", "ES256", "EdDSA"})
+    void signsAndVerifiesWithEachAlgorithm(String name) throws Exception {
+        JWSAlgorithm algorithm = JWSAlgorithm.parse(name);
+        SignatureService service = service(SigningKeys.of(JwsKeys.generate(algorithm)));
+        for (String format : new String[] {"png", "jpg"}) {
+            byte[] signed = service.sign(sample(format), format);
+            assertEquals(algorithm, service.inspect(signed, format).getAlgorithm());
+            VerificationCache.Result result = service.verifyResult(ByteBuffer.wrap(signed), format);
+            assertTrue(result.valid());
+            assertEquals(algorithm, result.algorithm());
+        }
+    }
+
+    @Test
+    void verifyDispatchesOnHeaderAlgorithm() throws Exception {
+        KeyPair rsa = JwsKeys.generate(JWSAlgorithm.RS256);
+        byte[] legacy = service(SigningKeys.of(rsa)).sign(sample("png"), "png");
+
+        KeyPair ec = JwsKeys.generate(JWSAlgorithm.ES256);
+        SignatureService migrated = service(new SigningKeys(JWSAlgorithm.ES256, ec, List.of(ec.getPublic(), rsa.getPublic())));
+        VerificationCache.Result result = migrated.verifyResult(ByteBuffer.wrap(legacy), "png");
+        assertTrue(result.valid());
+        assertEquals(JWSAlgorithm.RS256, result.algorithm());
+        assertEquals(JwsKeys.thumbprint(rsa.getPublic()), result.keyId());
+        assertTrue(migrated.verify(migrated.sign(sample("png"), "png"), "png"));
+
+        // Without the old key there is nothing to check an RS256 signature against
+        assertFalse(service(SigningKeys.of(ec)).verify(legacy, "png"));
+        // Nor does a signature verify under a different key of the same algorithm
+        assertFalse(service(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.RS256))).verify(legacy, "png"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RS256", "ES256", "EdDSA"})
+    void keyConfigGeneratesSelectedAlgorithm(String name) throws Exception {
+        SigningKeys keys = new KeyConfig(new MockEnvironment().withProperty("signature.algorithm", name)).signingKeys();
+        assertEquals(JWSAlgorithm.parse(name), keys.algorithm());
+        assertEquals(keys.algorithm(), JwsKeys.algorithmOf(keys.keyPair().getPublic()));
+        assertEquals(List.of(keys.keyPair().getPublic()), keys.trustedKeys());
+    }
+
+    @Test
+    void keyConfigLoadsPemKeysAndKeepsLegacyRsaTrusted() throws Exception {
+        KeyPair ec = JwsKeys.generate(JWSAlgorithm.ES256);
+        KeyPair rsa = JwsKeys.generate(JWSAlgorithm.RS256);
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("signature.algorithm", "ES256")
+                .withProperty("SIGNING_PRIVATE_KEY", pem(ec.getPrivate()))
+                .withProperty("SIGNING_PUBLIC_KEY", pem(ec.getPublic()))
+                .withProperty("RSA_PRIVATE_KEY", pem(rsa.getPrivate()))
+                .withProperty("RSA_PUBLIC_KEY", pem(rsa.getPublic()));
+
+        SigningKeys keys = new KeyConfig(env).signingKeys();
+        assertEquals(JWSAlgorithm.ES256, keys.algorithm());
+        assertEquals(ec.getPublic(), keys.keyPair().getPublic());
+        assertEquals(List.of(ec.getPublic(), rsa.getPublic()), keys.trustedKeys());
+    }
+
+    @Test
+    void keyConfigRejectsKeyOfWrongType() {
+        KeyPair ed = assertDoesNotThrow(() -> JwsKeys.generate(JWSAlgorithm.EdDSA));
+        MockEnvironment env = new MockEnvironment()
+                .withProperty("signature.algorithm", "ES256")
+                .withProperty("SIGNING_PRIVATE_KEY", pem(ed.getPrivate()))
+                .withProperty("SIGNING_PUBLIC_KEY", pem(ed.getPublic()));
+        assertThrows(IllegalStateException.class, () -> new KeyConfig(env).signingKeys());
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeyConfig(new MockEnvironment().withProperty("signature.algorithm", "HS256")).signingKeys());
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigningLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+    private static byte[] digest(int i) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(ByteBuffer.allocate(4).putInt(i).array());
+    }
+
+    // Stands in for the JWS signature bytes over digest(i)
+    private static byte[] signature(int i) {
+        return ("signature-" + i).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String id(int i) {
+        return SigningLedger.id(signature(i));
+    }
+
+    private static String encoded(byte[] digest) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private SigningLedger open(Path at) throws IOException {
+        // Tiny segments and index, so a few records cross both growth paths
+        return new SigningLedger(at, 4, 4, now::get);
+    }
+
+    @Test
+    void recordsSurviveRestart() throws Exception {
+        SigningLedger ledger = open(dir);
+        List<CompletableFuture<Void>> signers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            signers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    ledger.record(signature(n), digest(n), "kid-" + n, ImageFormat.PNG, 100 + n);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        signers.forEach(CompletableFuture::join);
+        now.set(1_700_000_005_000L);
+        assertTrue(ledger.revoke(id(3)).revoked());
+        assertNull(ledger.revoke(id(99)));
+        ledger.destroy();
+
+        SigningLedger reopened = open(dir);
+        assertEquals(21, reopened.records());
+        SigningLedger.Entry entry = reopened.find(id(7));
+        assertEquals(id(7), entry.signature());
+        assertEquals(encoded(digest(7)), entry.digest());
+        assertEquals("kid-7", entry.kid());
+        assertEquals(ImageFormat.PNG, entry.format());
+        assertEquals(107, entry.size());
+        assertFalse(entry.revoked());
+        assertEquals(1_700_000_005_000L, reopened.find(id(3)).revokedAt().toEpochMilli());
+        assertNull(reopened.find(id(20)));
+        assertThrows(IllegalArgumentException.class, () -> reopened.find("not-an-id"));
+
+        // Signing revoked pixels again is a new signature, and the revoked one stays revoked
+        reopened.record(signature(100), digest(3), "kid-new", ImageFormat.JPEG, 1);
+        assertFalse(reopened.find(id(100)).revoked());
+        assertEquals(encoded(digest(3)), reopened.find(id(100)).digest());
+        assertTrue(reopened.find(id(3)).revoked());
+        // Even recording the very same signature again neither lifts nor replaces anything
+        reopened.record(signature(3), digest(3), "kid-other", ImageFormat.JPEG, 1);
+        assertTrue(reopened.find(id(3)).revoked());
+        assertEquals("kid-3", reopened.find(id(3)).kid());
+        reopened.destroy();
+
+        SigningLedger again = open(dir);
+        assertTrue(again.find(id(3)).revoked());
+        assertFalse(again.find(id(100)).revoked());
+        again.destroy();
+        assertThrows(IOException.class, () -> again.record(signature(1), digest(1), "kid", ImageFormat.PNG, 1));
+    }
+
+    @Test
+    void formatsAreStoredAsFixedCodes() throws Exception {
+        SigningLedger ledger = open(dir);
+        ledger.record(signature(1), digest(1), "kid", ImageFormat.JPEG, 1);
+        ledger.record(signature(2), digest(2), "kid", ImageFormat.PNG, 1);
+        ledger.destroy();
+
+        // Records follow the header slot; the format byte must not follow the enum's order
+        byte[] file = Files.readAllBytes(dir.resolve(SigningLedger.LEDGER_FILE));
+        assertEquals(1, file[SigningLedger.RECORD + 5]);
+        assertEquals(2, file[2 * SigningLedger.RECORD + 5]);
+        SigningLedger reopened = open(dir);
+        assertEquals(ImageFormat.JPEG, reopened.find(id(1)).format());
+        assertEquals(ImageFormat.PNG, reopened.find(id(2)).format());
+        reopened.destroy();
+    }
+
+    @Test
+    void recoversFromCrashMidWrite() throws Exception {
+        SigningLedger ledger = open(dir);
+        for (int i = 0; i < 10; i++) {
+            ledger.record(signature(i), digest(i), "kid", ImageFormat.JPEG, i);
+        }
+        ledger.revoke(id(2));
+
+        // What a crash leaves behind: an index never marked clean, a torn last record
+        // and a record after it that was written but never acknowledged
+        Path crashed = Files.createDirectories(dir.resolve("crashed"));
+        Files.copy(dir.resolve(SigningLedger.LEDGER_FILE), crashed.resolve(SigningLedger.LEDGER_FILE));
+        Files.copy(dir.resolve(SigningLedger.INDEX_FILE), crashed.resolve(SigningLedger.INDEX_FILE));
+        try (FileChannel file = FileChannel.open(crashed.resolve(SigningLedger.LEDGER_FILE),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap(new byte[] {42}), 11L * SigningLedger.RECORD + 20);
+            byte[] stray = new byte[SigningLedger.RECORD];
+            file.read(ByteBuffer.wrap(stray), 10L * SigningLedger.RECORD);
+            file.write(ByteBuffer.wrap(stray), 12L * SigningLedger.RECORD);
+        }
+
+        SigningLedger recovered = open(crashed);
+        assertEquals(10, recovered.records());
+        assertNotNull(recovered.find(id(9)));
+        // The revocation was the torn record
+        assertFalse(recovered.find(id(2)).revoked());
+
+        // Appends go where the torn record was, and the stray one stays gone
+        recovered.record(signature(50), digest(50), "kid", ImageFormat.PNG, 50);
+        recovered.destroy();
+        SigningLedger reopened = open(crashed);
+        assertEquals(11, reopened.records());
+        assertEquals(50, reopened.find(id(50)).size());
+        reopened.destroy();
+        ledger.destroy();
+    }
+
+    @Test
+    void verificationReportsProvenanceAndRevocation() throws Exception {
+        VerificationCache cache = new VerificationCache(100, 3600);
+        CpuStage cpu = new CpuStage(1, 4, 1);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        SigningLedger ledger = open(dir);
+        try {
+            KeyRing keys = new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache);
+            SignatureService service = new SignatureService(keys, 268435456L, 33554432L, 64, cpu, budget, cache, ledger,
+                    new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+            BufferedImage img = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", baos);
+            ByteBuffer signed = ByteBuffer.wrap(service.sign(baos.toByteArray(), "png"));
+
+            VerificationCache.Result result = service.verifyResult(signed, "png");
+            assertTrue(result.valid());
+            assertEquals(keys.active().kid(), result.ledger().kid());
+            assertEquals(result.signature(), result.ledger().signature());
+            assertEquals(result.digest(), result.ledger().digest());
+            assertEquals(baos.size(), result.ledger().size());
+
+            // Applies to the cached verdict too
+            ledger.revoke(result.signature());
+            VerificationCache.Result revoked = service.verifyResult(signed, "png");
+            assertEquals(VerificationCache.Outcome.REVOKED, revoked.outcome());
+            assertFalse(service.verify(signed, "png"));
+            assertTrue(cache.hits() > 0);
+
+            // Signing the same pixels again does not bring the revoked image back
+            ByteBuffer resigned = ByteBuffer.wrap(service.sign(baos.toByteArray(), "png"));
+            VerificationCache.Result fresh = service.verifyResult(resigned, "png");
+            assertTrue(fresh.valid());
+            assertEquals(result.digest(), fresh.digest());
+            assertNotEquals(result.signature(), fresh.signature());
+            assertEquals(VerificationCache.Outcome.REVOKED, service.verifyResult(signed, "png").outcome());
+            cache.invalidateAll();
+            assertEquals(VerificationCache.Outcome.REVOKED, service.verifyResult(signed, "png").outcome());
+        } finally {
+            ledger.destroy();
+            cpu.destroy();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupWarmupTest {
+
+    @Test
+    void warmUpSignsAndVerifiesWithoutLeavingCacheEntries() throws Exception {
+        VerificationCache cache = new VerificationCache(100, 60);
+        CpuStage cpu = new CpuStage(1, 4, 1);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SignatureService service = new SignatureService(new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache),
+                268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(), new SignatureMetrics(registry, cpu, cache, budget));
+
+        new StartupWarmup(service, cache, null, 2, false).warmUp();
+        assertEquals(4, registry.get("signature.verify.outcome").tag("outcome", "valid").counter().count());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void imageIoPluginsHaveRuntimeHints() {
+        RuntimeHints hints = new RuntimeHints();
+        new SignatureRuntimeHints().registerHints(hints, getClass().getClassLoader());
+        for (String provider : SignatureRuntimeHints.IMAGEIO_PROVIDERS) {
+            assertDoesNotThrow(() -> Class.forName(provider), provider);
+            assertTrue(RuntimeHintsPredicates.reflection().onType(TypeReference.of(provider))
+                    .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS).test(hints), provider);
+        }
+        assertTrue(RuntimeHintsPredicates.resource().forResource("META-INF/services/javax.imageio.spi.ImageReaderSpi").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("profiles/ClayRGB1998.icc").test(hints));
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.signature;
+
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingDigestTest {
+
+    // Small strips force many strips per image plus a ragged final strip.
+    private static final long STRIP_BYTES = 700;
+
+    private static byte[] fullDigest(byte[] data, String format) throws Exception {
+        return PixelDigest.of(new ImageContext(data, ImageFormat.fromName(format)).raster().getDataBuffer());
+    }
+
+    private static byte[] streamingDigest(byte[] data, String format) throws Exception {
+        return StreamingDigest.digest(new ImageContext(data, ImageFormat.fromName(format)), STRIP_BYTES);
+    }
+
+    static Stream<Arguments> pngLayouts() {
+        return Stream.of(
+                Arguments.of(0, 1, false), Arguments.of(0, 2, false), Arguments.of(0, 4, false),
+                Arguments.of(0, 8, false), Arguments.of(0, 16, false),
+                Arguments.of(0, 2, true), Arguments.of(0, 8, true), Arguments.of(0, 16, true),
+                Arguments.of(2, 8, false), Arguments.of(2, 16, false),
+                Arguments.of(2, 8, true), Arguments.of(2, 16, true),
+                Arguments.of(3, 1, false), Arguments.of(3, 2, false), Arguments.of(3, 4, false),
+                Arguments.of(3, 8, false), Arguments.of(3, 8, true),
+                Arguments.of(4, 8, false), Arguments.of(4, 16, false),
+                Arguments.of(6, 8, false), Arguments.of(6, 16, false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pngLayouts")
+    void pngScanlinesMatchFullDecode(int colorType, int bitDepth, boolean transparency) throws Exception {
+        byte[] png = encodePng(colorType, bitDepth, 37, 29, transparency);
+        assertArrayEquals(fullDigest(png, "png"), streamingDigest(png, "png"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("imageTypes")
+    void imageIoPngMatchesFullDecode(int type) throws Exception {
+        byte[] png = write(noise(type, 45, 33), "png", false);
+        assertArrayEquals(fullDigest(png, "png"), streamingDigest(png, "png"));
+    }
+
+    @Test
+    void interlacedPngFallsBackToRegions() throws Exception {
+        byte[] png = write(noise(BufferedImage.TYPE_INT_ARGB, 41, 27), "png", true);
+        assertArrayEquals(fullDigest(png, "png"), streamingDigest(png, "png"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("jpegTypes")
+    void jpegRegionsMatchFullDecode(int type) throws Exception {
+        byte[] jpg = write(noise(type, 67, 53), "jpg", false);
+        assertArrayEquals(fullDigest(jpg, "jpg"), streamingDigest(jpg, "jpg"));
+    }
+
+    @Test
+    void serviceStreamsAboveThreshold() throws Exception {
+        KeyPair keyPair = new RSAKeyGenerator(2048).generate().toKeyPair();
+        VerificationCache cache = new VerificationCache(0, 0);
+        CpuStage cpu = new CpuStage(1, 4, 1);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        SignatureService streaming = new SignatureService(new KeyRing(SigningKeys.of(keyPair), cache), 0, STRIP_BYTES, 4, cpu, budget, cache, new SigningLedger(),
+                new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+        byte[] png = write(noise(BufferedImage.TYPE_3BYTE_BGR, 80, 60), "png", false);
+        byte[] signed = streaming.sign(png, "png");
+        assertTrue(streaming.verify(signed, "png"));
+    }
+
+    static Stream<Integer> imageTypes() {
+        return Stream.of(BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY,
+                BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED);
+    }
+
+    static Stream<Integer> jpegTypes() {
+        return Stream.of(BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    private static BufferedImage noise(int type, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static byte[] write(BufferedImage img, String format, boolean interlaced) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (interlaced) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    /** Hand-rolled encoder covering every colour type and bit depth, cycling through all five filters. */
+    private static byte[] encodePng(int colorType, int bitDepth, int width, int height, boolean transparency)
+            throws IOException {
+        int bands = switch (colorType) {
+            case 0, 3 -> 1;
+            case 4 -> 2;
+            case 2 -> 3;
+            default -> 4;
+        };
+        int rowBytes = (width * bands * bitDepth + 7) / 8;
+        int bpp = Math.max(1, bands * bitDepth / 8);
+        Random random = new Random(colorType * 100 + bitDepth);
+
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        try (DeflaterOutputStream z = new DeflaterOutputStream(idat)) {
+            byte[] prev = new byte[rowBytes];
+            for (int y = 0; y < height; y++) {
+                byte[] raw = new byte[rowBytes];
+                random.nextBytes(raw);
+                if (transparency && colorType != 3) {
+                    // Make some pixels hit the transparent colour (all samples zero).
+                    for (int x = 0; x < width; x += 3) {
+                        int from = x * bands * bitDepth / 8;
+                        int to = Math.min(rowBytes, ((x + 1) * bands * bitDepth + 7) / 8);
+                        for (int i = from; i < to && bitDepth >= 8; i++) {
+                            raw[i] = 0;
+                        }
+                    }
+                }
+                if (colorType == 3 && bitDepth == 8) {
+                    for (int i = 0; i < raw.length; i++) {
+                        raw[i] = (byte) ((raw[i] & 0xff) % 16);
+                    }
+                }
+                int filter = y % 5;
+                z.write(filter);
+                z.write(filter(filter, raw, prev, bpp));
+                prev = raw;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(PngChunks.SIGNATURE);
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(ihdr);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(bitDepth);
+        h.writeByte(colorType);
+        h.writeByte(0);
+        h.writeByte(0);
+        h.writeByte(0);
+        chunk(out, "IHDR", ihdr.toByteArray());
+        if (colorType == 3) {
+            int entries = Math.min(1 << bitDepth, 16);
+            byte[] plte = new byte[entries * 3];
+            random.nextBytes(plte);
+            chunk(out, "PLTE", plte);
+            if (transparency) {
+                chunk(out, "tRNS", new byte[] {0, (byte) 128, (byte) 255});
+            }
+        } else if (transparency) {
+            chunk(out, "tRNS", new byte[colorType == 0 ? 2 : 6]);
+        }
+        chunk(out, "IDAT", idat.toByteArray());
+        chunk(out, "IEND", new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static byte[] filter(int type, byte[] raw, byte[] prev, int bpp) {
+        byte[] out = new byte[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            int a = i >= bpp ? raw[i - bpp] & 0xff : 0;
+            int b = prev[i] & 0xff;
+            int c = i >= bpp ? prev[i - bpp] & 0xff : 0;
+            int predictor = switch (type) {
+                case 1 -> a;
+                case 2 -> b;
+                case 3 -> (a + b) >>> 1;
+                case 4 -> paeth(a, b, c);
+                default -> 0;
+            };
+            out[i] = (byte) (raw[i] - predictor);
+        }
+        return out;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static void chunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        DataOutputStream d = new DataOutputStream(out);
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        d.writeInt(data.length);
+        d.write(name);
+        d.write(data);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        d.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileDigestTest {
+
+    private final VerificationCache cache = new VerificationCache(0, 0);
+    private final CpuStage cpu = new CpuStage(2, 4, 1);
+    private final MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+    private KeyPair keyPair;
+
+    @BeforeEach
+    void generateKey() throws Exception {
+        keyPair = JwsKeys.generate(JWSAlgorithm.ES256);
+    }
+
+    private SignatureService service(long streamingThreshold, int tileRows) throws Exception {
+        return new SignatureService(new KeyRing(SigningKeys.of(keyPair), cache), streamingThreshold, 700, tileRows,
+                cpu, budget, cache, new SigningLedger(), new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+    }
+
+    private static BufferedImage noise(int type, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static byte[] write(BufferedImage img, String format) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, format, baos);
+        return baos.toByteArray();
+    }
+
+    @Test
+    void signsMerkleRootAndVerifies() throws Exception {
+        SignatureService service = service(268435456L, 8);
+        for (String format : new String[] {"png", "jpg"}) {
+            byte[] signed = service.sign(write(noise(BufferedImage.TYPE_3BYTE_BGR, 50, 40), format), format);
+            JWSHeader header = service.inspect(signed, format);
+            assertEquals(TileDigest.SCHEME, header.getCustomParam(TileDigest.SCHEME_PARAM));
+            assertEquals(8, TileDigest.rows(header));
+            assertEquals(5, TileDigest.leaves(header).size());
+            assertTrue(service.verify(signed, format));
+        }
+    }
+
+    @Test
+    void streamedTilesMatchFullDecode() throws Exception {
+        SignatureService full = service(268435456L, 4);
+        SignatureService streaming = service(0, 4);
+        int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY};
+        for (int type : types) {
+            ImageContext context = new ImageContext(write(noise(type, 45, 33), "png"), ImageFormat.PNG);
+            TileDigest expected = full.tileDigest(context, 4);
+            TileDigest actual = streaming.tileDigest(new ImageContext(context.data(), ImageFormat.PNG), 4);
+            assertEquals(9, actual.leaves().size());
+            assertArrayEquals(expected.root(), actual.root(), "type " + type);
+        }
+        // Signed while streaming, verified from a full decode and the other way round
+        byte[] png = write(noise(BufferedImage.TYPE_INT_RGB, 60, 50), "png");
+        assertTrue(full.verify(streaming.sign(png, "png"), "png"));
+        assertTrue(streaming.verify(full.sign(png, "png"), "png"));
+    }
+
+    @Test
+    void reportsTamperedTiles() throws Exception {
+        SignatureService service = service(268435456L, 8);
+        byte[] signed = service.sign(write(noise(BufferedImage.TYPE_INT_RGB, 50, 40), "png"), "png");
+        String jws = SignatureService.extractJwsPng(ByteBuffer.wrap(signed));
+
+        // Change one pixel in row 19, which lies in tile 2 (rows 16 to 23), and keep the signature
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(signed));
+        img.setRGB(30, 19, ~img.getRGB(30, 19));
+        byte[] tampered = PngChunks.withJws(write(img, "png"), jws);
+
+        VerificationCache.Result result = service.verifyResult(ByteBuffer.wrap(tampered), "png");
+        assertEquals(VerificationCache.Outcome.INVALID, result.outcome());
+        assertEquals(List.of(new VerificationCache.Region(2, 16, 24)), result.tampered());
+    }
+
+    @Test
+    void untrustedSignatureLocatesNothing() throws Exception {
+        SignatureService service = service(268435456L, 8);
+        SignatureService other = new SignatureService(new KeyRing(SigningKeys.of(JwsKeys.generate(JWSAlgorithm.ES256)), cache),
+                268435456L, 700, 8, cpu, budget, cache, new SigningLedger(), new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+        byte[] png = write(noise(BufferedImage.TYPE_INT_RGB, 50, 40), "png");
+        byte[] untrusted = other.sign(png, "png");
+        VerificationCache.Result result = service.verifyResult(ByteBuffer.wrap(untrusted), "png");
+        assertEquals(VerificationCache.Outcome.INVALID, result.outcome());
+        assertTrue(result.tampered().isEmpty());
+    }
+
+    @Test
+    void singleHashSignaturesStillVerify() throws Exception {
+        byte[] png = write(noise(BufferedImage.TYPE_INT_RGB, 50, 40), "png");
+        byte[] legacy = service(268435456L, 0).sign(png, "png");
+        assertNull(service(268435456L, 0).inspect(legacy, "png").getCustomParam(TileDigest.SCHEME_PARAM));
+        assertTrue(service(268435456L, 8).verify(legacy, "png"));
+        assertTrue(service(0, 8).verify(legacy, "png"));
+    }
+
+    @Test
+    void capsTileCount() {
+        assertEquals(64, TileDigest.tileRows(64, 4000));
+        assertEquals(196, TileDigest.tileRows(64, 100000));
+        assertTrue((100000 + 195) / 196 <= TileDigest.MAX_TILES);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Multipart limits as the embedded container enforces them, which MockMvc does not: uploads
+ * past Spring's 1 MB default are accepted, and ones past {@code signature.upload.max-bytes} get 413.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "signature.upload.max-bytes=4000000")
+class UploadLimitsIntegrationTest {
+
+    @Autowired
+    TestRestTemplate rest;
+
+    // Noise does not compress, so the PNG is about 3 bytes per pixel
+    static byte[] noisePng(int size) throws Exception {
+        Random random = new Random(size);
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", baos);
+        return baos.toByteArray();
+    }
+
+    static MultiValueMap<String, Object> part(String name, String filename, byte[] data) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add(name, new ByteArrayResource(data) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+        return parts;
+    }
+
+    static byte[] zip(Map<String, byte[]> entries) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(baos)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private ResponseEntity<Map<String, Object>> post(String path, MultiValueMap<String, Object> parts) {
+        return rest.exchange(path, HttpMethod.POST, new HttpEntity<>(parts),
+                new ParameterizedTypeReference<Map<String, Object>>() {
+                });
+    }
+
+    @Test
+    void signsAndVerifiesMultipartPastSpringDefault() throws Exception {
+        byte[] image = noisePng(1000);
+        assertTrue(image.length > 2_000_000);
+
+        ResponseEntity<byte[]> signed = rest.postForEntity("/api/v1/sign", part("file", "noise.png", image), byte[].class);
+        assertEquals(200, signed.getStatusCode().value());
+        ResponseEntity<Map<String, Object>> verified = post("/api/v1/verify", part("file", "noise.png", signed.getBody()));
+        assertEquals(200, verified.getStatusCode().value());
+        assertEquals(true, verified.getBody().get("valid"));
+    }
+
+    @Test
+    void refusesMultipartPastUploadLimit() {
+        byte[] data = new byte[5_000_000];
+        new Random(1).nextBytes(data);
+        ResponseEntity<Map<String, Object>> response = post("/api/v1/verify", part("file", "big.png", data));
+        assertEquals(413, response.getStatusCode().value());
+        assertEquals("Upload exceeds 4000000 bytes", response.getBody().get("error"));
+    }
+
+    @Test
+    void signsMultipartJobPastSpringDefault() throws Exception {
+        byte[] image = noisePng(800);
+        assertTrue(image.length > 1_048_576);
+        ResponseEntity<Map<String, Object>> submitted = post("/api/v1/jobs/sign", part("file", "large.png", image));
+        assertEquals(202, submitted.getStatusCode().value());
+        String id = (String) submitted.getBody().get("id");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        Object status;
+        do {
+            assertTrue(System.nanoTime() < deadline, "job did not finish");
+            Thread.sleep(20);
+            status = rest.exchange("/api/v1/jobs/" + id, HttpMethod.GET, null,
+                    new ParameterizedTypeReference<Map<String, Object>>() {
+                    }).getBody().get("status");
+        } while ("queued".equals(status) || "running".equals(status));
+        assertEquals("done", status);
+
+        byte[] signed = rest.getForObject("/api/v1/jobs/" + id + "/result", byte[].class);
+        assertEquals(true, post("/api/v1/verify", part("file", "large.png", signed)).getBody().get("valid"));
+    }
+
+    @Test
+    void signsMultipartAndVerifiesRawZipBatchPastSpringDefault() throws Exception {
+        Map<String, byte[]> images = new LinkedHashMap<>();
+        images.put("a.png", noisePng(700));
+        images.put("b.png", noisePng(300));
+        byte[] archive = zip(images);
+        assertTrue(archive.length > 1_048_576);
+
+        ResponseEntity<byte[]> signed = rest.postForEntity("/api/v1/sign/batch", part("files", "images.zip", archive),
+                byte[].class);
+        assertEquals(200, signed.getStatusCode().value());
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(signed.getBody()))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertNotNull(entries.remove(BatchController.MANIFEST));
+        assertEquals(images.keySet(), entries.keySet());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(BatchController.ZIP));
+        ResponseEntity<byte[]> verified = rest.postForEntity("/api/v1/verify/batch",
+                new HttpEntity<>(zip(entries), headers), byte[].class);
+        assertEquals(200, verified.getStatusCode().value());
+        String[] lines = new String(verified.getBody(), StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(2, lines.length);
+        for (String line : lines) {
+            assertTrue(line.contains("\"valid\":true"), line);
+        }
+    }
+}
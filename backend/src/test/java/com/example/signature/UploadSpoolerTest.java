@@ -0,0 +1,82 @@
+package com.example.signature;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSpoolerTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static long files(Path dir) throws Exception {
+        try (var list = Files.list(dir)) {
+            return list.count();
+        }
+    }
+
+    @Test
+    void smallUploadStaysInMemory() throws Exception {
+        UploadSpooler spooler = new UploadSpooler(1024, 4096, dir.toString());
+        byte[] data = random(1024);
+        try (UploadSpooler.Upload upload = spooler.spool(new ByteArrayInputStream(data), -1)) {
+            assertFalse(upload.isMapped());
+            assertArrayEquals(data, ByteBuffers.toArray(upload.buffer()));
+        }
+        assertEquals(0, files(dir));
+    }
+
+    @Test
+    void multipartPartsAreTakenOverWhole() throws Exception {
+        UploadSpooler spooler = new UploadSpooler(1024, 4096, dir.toString());
+        byte[] small = random(1000);
+        byte[] large = random(3000);
+        try (UploadSpooler.Upload upload = spooler.spool(new MockMultipartFile("files", small))) {
+            assertFalse(upload.isMapped());
+            assertArrayEquals(small, ByteBuffers.toArray(upload.buffer()));
+        }
+        try (UploadSpooler.Upload upload = spooler.spool(new MockMultipartFile("files", large))) {
+            assertTrue(upload.isMapped());
+            assertArrayEquals(large, ByteBuffers.toArray(upload.buffer()));
+            assertEquals(1, files(dir));
+        }
+        assertEquals(0, files(dir));
+        assertThrows(UploadSpooler.TooLargeException.class,
+                () -> spooler.spool(new MockMultipartFile("files", random(5000))));
+    }
+
+    @Test
+    void largeUploadIsMappedAndDeletedOnClose() throws Exception {
+        UploadSpooler spooler = new UploadSpooler(1024, 1 << 20, dir.toString());
+        byte[] data = random(300_000);
+        try (UploadSpooler.Upload upload = spooler.spool(new ByteArrayInputStream(data), -1)) {
+            assertTrue(upload.isMapped());
+            assertEquals(1, files(dir));
+            assertArrayEquals(data, ByteBuffers.toArray(upload.buffer()));
+        }
+        assertEquals(0, files(dir));
+    }
+
+    @Test
+    void oversizedUploadIsRejected() throws Exception {
+        UploadSpooler spooler = new UploadSpooler(1024, 4096, dir.toString());
+        assertThrows(UploadSpooler.TooLargeException.class,
+                () -> spooler.spool(new ByteArrayInputStream(new byte[0]), 5000));
+        assertThrows(UploadSpooler.TooLargeException.class,
+                () -> spooler.spool(new ByteArrayInputStream(random(5000)), -1));
+        assertEquals(0, files(dir));
+    }
+}
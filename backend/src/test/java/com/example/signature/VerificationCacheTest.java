@@ -0,0 +1,82 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerificationCacheTest {
+
+    private static final VerificationCache.Result VALID = new VerificationCache.Result(VerificationCache.Outcome.VALID, "kid", JWSAlgorithm.RS256);
+
+    private final AtomicLong now = new AtomicLong();
+
+    private static ByteBuffer key(String content) {
+        return VerificationCache.key(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void keyIsContentHash() {
+        assertEquals(key("a"), key("a"));
+        assertNotEquals(key("a"), key("b"));
+        assertEquals(32, key("a").remaining());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        VerificationCache cache = new VerificationCache(2, 60, now::get);
+        cache.put(key("a"), 0, VALID);
+        cache.put(key("b"), 0, VALID);
+        assertNotNull(cache.get(key("a")));
+        cache.put(key("c"), 0, VALID);
+
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("c")));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void entriesExpire() {
+        VerificationCache cache = new VerificationCache(10, 60, now::get);
+        cache.put(key("a"), 0, VALID);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertEquals(VALID, cache.get(key("a")));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.get(key("a")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void keyChangeInvalidatesAndDiscardsInFlightResults() {
+        VerificationCache cache = new VerificationCache(10, 60, now::get);
+        cache.keysChanged("k1");
+        long generation = cache.generation();
+        cache.put(key("a"), generation, VALID);
+
+        cache.keysChanged("k1");
+        assertNotNull(cache.get(key("a")));
+
+        cache.keysChanged("k2");
+        assertNull(cache.get(key("a")));
+        // A verdict computed with the old keys arrives after the change
+        cache.put(key("b"), generation, VALID);
+        assertNull(cache.get(key("b")));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() {
+        VerificationCache cache = new VerificationCache(0, 60, now::get);
+        assertFalse(cache.enabled());
+        cache.put(key("a"), 0, VALID);
+        assertEquals(0, cache.size());
+    }
+}
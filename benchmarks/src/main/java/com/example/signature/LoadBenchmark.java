@@ -0,0 +1,476 @@
+package com.example.signature;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * End-to-end load on {@code POST /api/v1/sign} and {@code POST /api/v1/verify}. Starts the
+ * backend in this JVM on a random port (or targets {@code url=}), builds a synthetic image mix,
+ * and sends requests for {@code warmup} plus {@code duration} seconds, either from
+ * {@code concurrency} closed-loop clients or, with {@code rate=}, at a fixed arrival rate with at
+ * most {@code concurrency} requests in flight. Open-loop latencies are measured from the
+ * intended send time, so a server that falls behind is not hidden by the client waiting for it.
+ *
+ * <p>Reports throughput, p50/p95/p99/p99.9 latency per endpoint, errors (non-2xx, wrong verdicts,
+ * client saturation) and, in-process, heap peak and GC time of the JVM running both sides. Each
+ * run is saved as JSON under {@code out=}; {@code compare A.json B.json} sets two runs side by side.
+ *
+ * <pre>java -cp benchmarks/target/benchmarks.jar com.example.signature.LoadBenchmark [key=value ...]
+ * java -cp benchmarks/target/benchmarks.jar com.example.signature.LoadBenchmark compare A.json B.json</pre>
+ */
+public final class LoadBenchmark {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("concurrency", "8");
+        DEFAULTS.put("rate", "0");
+        DEFAULTS.put("sizes", "640x480:4,1920x1080:4,4000x3000:1");
+        DEFAULTS.put("formats", "jpg:3,png:1");
+        DEFAULTS.put("verify", "0.5");
+        DEFAULTS.put("signed", "0.9");
+        DEFAULTS.put("variants", "4");
+        DEFAULTS.put("seed", "1");
+        DEFAULTS.put("url", "");
+        DEFAULTS.put("label", "");
+        DEFAULTS.put("out", "benchmarks/results");
+    }
+
+    private static final String[] OPS = {"sign", "verify"};
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /** A generated image and its signed copy, signed by the server under test. */
+    private record Sample(String name, byte[] image, byte[] signed) {
+    }
+
+    /** {@code expectValid} is the verdict verify must return, null for sign. */
+    private record Request(String op, byte[] body, Boolean expectValid) {
+    }
+
+    private record Weighted<T>(List<T> values, double[] cumulative) {
+
+        static <T> Weighted<T> parse(String spec, Function<String, T> value) {
+            List<T> values = new ArrayList<>();
+            List<Double> weights = new ArrayList<>();
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split(":");
+                values.add(value.apply(kv[0]));
+                weights.add(kv.length > 1 ? Double.parseDouble(kv[1]) : 1);
+            }
+            double total = weights.stream().mapToDouble(Double::doubleValue).sum();
+            double[] cumulative = new double[weights.size()];
+            double sum = 0;
+            for (int i = 0; i < cumulative.length; i++) {
+                sum += weights.get(i) / total;
+                cumulative[i] = sum;
+            }
+            return new Weighted<>(values, cumulative);
+        }
+
+        int pick(Random random) {
+            double r = random.nextDouble();
+            for (int i = 0; i < cumulative.length - 1; i++) {
+                if (r < cumulative[i]) {
+                    return i;
+                }
+            }
+            return cumulative.length - 1;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Map<String, Recorder> latency = new LinkedHashMap<>();
+    private final Map<String, LongAdder> bytes = new LinkedHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private Sample[][] samples;
+    private Weighted<int[]> sizes;
+    private Weighted<String> formats;
+    private URI base;
+    private volatile long measureFrom;
+
+    private LoadBenchmark(Map<String, String> options) {
+        this.options = options;
+        for (String op : OPS) {
+            latency.put(op, new Recorder(3));
+            bytes.put(op, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length != 3) {
+                throw new IllegalArgumentException("Usage: compare A.json B.json");
+            }
+            compare(JSON.readTree(Path.of(args[1]).toFile()), JSON.readTree(Path.of(args[2]).toFile()));
+            return;
+        }
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !DEFAULTS.containsKey(arg.substring(0, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; options: " + DEFAULTS.keySet());
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadBenchmark(options).run();
+    }
+
+    private void run() throws Exception {
+        ConfigurableApplicationContext server = null;
+        if (options.get("url").isEmpty()) {
+            server = start();
+            base = URI.create("http://localhost:" + ((WebServerApplicationContext) server).getWebServer().getPort());
+        } else {
+            base = URI.create(options.get("url"));
+        }
+        try {
+            prepare();
+            Map<String, Object> result = load();
+            print(result);
+            Path out = Path.of(options.get("out"));
+            Files.createDirectories(out);
+            String label = options.get("label").isEmpty() ? "" : "-" + options.get("label");
+            Path file = out.resolve("load-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                    + label + ".json");
+            JSON.writeValue(file.toFile(), result);
+            System.out.println("Saved " + file);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    // The backend as deployed, except that repeated images are not answered from the verification
+    // cache; system properties (-Dsignature...) override these defaults
+    private static ConfigurableApplicationContext start() {
+        SpringApplication app = new SpringApplication(SignatureApplication.class);
+        app.setBannerMode(Banner.Mode.OFF);
+        app.setDefaultProperties(Map.of(
+                "server.port", "0",
+                "signature.verify-cache.max-entries", "0",
+                "logging.level.root", "WARN"));
+        return app.run();
+    }
+
+    private void prepare() throws Exception {
+        sizes = Weighted.parse(options.get("sizes"), s -> {
+            String[] wh = s.split("x");
+            return new int[] {Integer.parseInt(wh[0]), Integer.parseInt(wh[1])};
+        });
+        formats = Weighted.parse(options.get("formats"), s -> s);
+        int variants = Integer.parseInt(options.get("variants"));
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        samples = new Sample[sizes.values().size() * formats.values().size()][variants];
+        System.out.printf("Preparing %d images...%n", samples.length * variants);
+        for (int s = 0; s < sizes.values().size(); s++) {
+            int[] size = sizes.values().get(s);
+            for (int f = 0; f < formats.values().size(); f++) {
+                String format = formats.values().get(f);
+                for (int v = 0; v < variants; v++) {
+                    byte[] image = image(size[0], size[1], format, random.nextLong());
+                    HttpResponse<byte[]> signed = send("sign", image);
+                    if (signed.statusCode() != 200) {
+                        throw new IllegalStateException("Signing a sample returned " + signed.statusCode());
+                    }
+                    samples[s * formats.values().size() + f][v] =
+                            new Sample(size[0] + "x" + size[1] + "." + format, image, signed.body());
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> load() throws Exception {
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        double rate = Double.parseDouble(options.get("rate"));
+        long start = System.nanoTime();
+        measureFrom = start + warmup;
+        long end = measureFrom + duration;
+
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        Map<String, long[]> gcBefore = new TreeMap<>();
+        Thread jvmSnapshot = new Thread(() -> {
+            sleepUntil(measureFrom);
+            heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcBefore.put(gc.getName(), new long[] {gc.getCollectionCount(), gc.getCollectionTime()});
+            }
+        });
+        jvmSnapshot.start();
+        System.out.printf("Warming up for %d s, then measuring for %d s...%n",
+                TimeUnit.NANOSECONDS.toSeconds(warmup), TimeUnit.NANOSECONDS.toSeconds(duration));
+        if (rate > 0) {
+            openLoop(rate, concurrency, start, end);
+        } else {
+            closedLoop(concurrency, end);
+        }
+        long measured = Math.min(System.nanoTime(), end) - measureFrom;
+        jvmSnapshot.join();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", LocalDateTime.now().toString());
+        result.put("java", Runtime.version().toString());
+        result.put("cores", Runtime.getRuntime().availableProcessors());
+        result.put("config", options);
+        Map<String, Object> ops = new LinkedHashMap<>();
+        Histogram all = new Histogram(3);
+        long allBytes = 0;
+        for (String op : OPS) {
+            Histogram histogram = latency.get(op).getIntervalHistogram();
+            all.add(histogram);
+            allBytes += bytes.get(op).sum();
+            ops.put(op, stats(histogram, bytes.get(op).sum(), measured));
+        }
+        ops.put("all", stats(all, allBytes, measured));
+        result.put("ops", ops);
+        long errorCount = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        Map<String, Long> errorKinds = new TreeMap<>();
+        errors.forEach((kind, count) -> errorKinds.put(kind, count.sum()));
+        result.put("errors", errorKinds);
+        result.put("errorRate", all.getTotalCount() + errorCount == 0 ? 0.0
+                : (double) errorCount / (all.getTotalCount() + errorCount));
+        if (options.get("url").isEmpty()) {
+            Map<String, Object> jvm = new LinkedHashMap<>();
+            jvm.put("heapPeakMb", heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() / 1048576);
+            jvm.put("heapMaxMb", Runtime.getRuntime().maxMemory() / 1048576);
+            Map<String, Object> gcs = new LinkedHashMap<>();
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                long[] before = gcBefore.getOrDefault(gc.getName(), new long[2]);
+                gcs.put(gc.getName(), Map.of("count", gc.getCollectionCount() - before[0],
+                        "timeMs", gc.getCollectionTime() - before[1]));
+            }
+            jvm.put("gc", gcs);
+            result.put("jvm", jvm);
+        }
+        return result;
+    }
+
+    private void closedLoop(int concurrency, long end) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long seed = Long.parseLong(options.get("seed"));
+        for (int c = 0; c < concurrency; c++) {
+            Random random = new Random(seed * 31 + c);
+            clients.execute(() -> {
+                while (System.nanoTime() < end) {
+                    Request request = next(random);
+                    long sent = System.nanoTime();
+                    try {
+                        complete(request, sent, send(request.op(), request.body()), null);
+                    } catch (Exception e) {
+                        complete(request, sent, null, e);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private void openLoop(double rate, int concurrency, long start, long end) throws InterruptedException {
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        Semaphore inFlight = new Semaphore(concurrency);
+        double interval = 1e9 / rate;
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * interval);
+            if (intended >= end) {
+                break;
+            }
+            sleepUntil(intended);
+            Request request = next(random);
+            if (!inFlight.tryAcquire()) {
+                // Counted, not queued: the client is the bottleneck, and waiting would hide it
+                if (intended >= measureFrom) {
+                    errors.computeIfAbsent("client saturated", k -> new LongAdder()).increment();
+                }
+                continue;
+            }
+            pending.add(http.sendAsync(request(request.op(), request.body()), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, e) -> {
+                        inFlight.release();
+                        complete(request, intended, response, e);
+                    }));
+            pending.removeIf(CompletableFuture::isDone);
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+    }
+
+    private Request next(Random random) {
+        Sample[] variants = samples[sizes.pick(random) * formats.values().size() + formats.pick(random)];
+        Sample sample = variants[random.nextInt(variants.length)];
+        if (random.nextDouble() >= Double.parseDouble(options.get("verify"))) {
+            return new Request("sign", sample.image(), null);
+        }
+        boolean signed = random.nextDouble() < Double.parseDouble(options.get("signed"));
+        return new Request("verify", signed ? sample.signed() : sample.image(), signed);
+    }
+
+    private void complete(Request request, long sent, HttpResponse<byte[]> response, Throwable failure) {
+        long done = System.nanoTime();
+        if (sent < measureFrom) {
+            return;
+        }
+        String error = null;
+        if (failure != null) {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            error = cause.getClass().getSimpleName();
+        } else if (response.statusCode() != 200) {
+            error = "http " + response.statusCode();
+        } else if (request.expectValid() != null
+                && !new String(response.body()).contains("\"valid\":" + request.expectValid())) {
+            error = "wrong verdict";
+        }
+        if (error != null) {
+            errors.computeIfAbsent(request.op() + ": " + error, k -> new LongAdder()).increment();
+            return;
+        }
+        latency.get(request.op()).recordValue(done - sent);
+        bytes.get(request.op()).add(request.body().length);
+    }
+
+    private HttpResponse<byte[]> send(String op, byte[] body) throws IOException, InterruptedException {
+        return http.send(request(op, body), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest request(String op, byte[] body) {
+        return HttpRequest.newBuilder(base.resolve("/api/v1/" + op))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static Map<String, Object> stats(Histogram histogram, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", histogram.getTotalCount());
+        stats.put("perSecond", round(histogram.getTotalCount() / seconds));
+        stats.put("mbPerSecond", round(bytes / 1e6 / seconds));
+        Map<String, Double> ms = new LinkedHashMap<>();
+        for (double p : PERCENTILES) {
+            ms.put("p" + (p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p).replace(".", "")),
+                    round(histogram.getValueAtPercentile(p) / 1e6));
+        }
+        ms.put("max", round(histogram.getMaxValue() / 1e6));
+        ms.put("mean", round(histogram.getMean() / 1e6));
+        stats.put("latencyMs", ms);
+        return stats;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static void print(Map<String, Object> result) {
+        System.out.printf("%-8s %9s %8s %8s %8s %8s %8s %8s%n",
+                "op", "requests", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+        JsonNode ops = JSON.valueToTree(result.get("ops"));
+        ops.fields().forEachRemaining(op -> {
+            JsonNode ms = op.getValue().get("latencyMs");
+            System.out.printf(Locale.ROOT, "%-8s %9d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f%n", op.getKey(),
+                    op.getValue().get("requests").asLong(), op.getValue().get("perSecond").asDouble(),
+                    ms.get("p50").asDouble(), ms.get("p95").asDouble(), ms.get("p99").asDouble(),
+                    ms.get("p999").asDouble(), ms.get("max").asDouble());
+        });
+        System.out.printf(Locale.ROOT, "errors: %.2f%% %s%n", 100 * (double) result.get("errorRate"), result.get("errors"));
+        if (result.containsKey("jvm")) {
+            System.out.println("jvm: " + result.get("jvm"));
+        }
+    }
+
+    private static void compare(JsonNode a, JsonNode b) {
+        System.out.printf("%-8s %-10s %10s %10s %8s%n", "op", "metric", "A", "B", "change");
+        for (String op : new String[] {"sign", "verify", "all"}) {
+            Map<String, JsonNode[]> rows = new LinkedHashMap<>();
+            rows.put("req/s", new JsonNode[] {a.at("/ops/" + op + "/perSecond"), b.at("/ops/" + op + "/perSecond")});
+            for (String p : new String[] {"p50", "p95", "p99", "p999"}) {
+                rows.put(p + " ms", new JsonNode[] {a.at("/ops/" + op + "/latencyMs/" + p), b.at("/ops/" + op + "/latencyMs/" + p)});
+            }
+            rows.forEach((metric, values) -> {
+                double before = values[0].asDouble();
+                double after = values[1].asDouble();
+                System.out.printf(Locale.ROOT, "%-8s %-10s %10.1f %10.1f %7s%n", op, metric, before, after,
+                        before == 0 ? "" : String.format(Locale.ROOT, "%+.0f%%", 100 * (after - before) / before));
+            });
+        }
+        System.out.printf(Locale.ROOT, "%-8s %-10s %9.2f%% %9.2f%%%n", "all", "errors",
+                100 * a.path("errorRate").asDouble(), 100 * b.path("errorRate").asDouble());
+    }
+
+    private static byte[] image(int width, int height, String format, long seed) throws IOException {
+        // Smooth gradients with some noise, so sizes on disk are closer to photos than pure noise
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        int phase = random.nextInt(256);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + phase) & 0xff;
+                int g = (y * 255 / height) & 0xff;
+                int b = ((x + y) / 4 + random.nextInt(16)) & 0xff;
+                row[x] = r << 16 | g << 8 | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static void sleepUntil(long deadline) {
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
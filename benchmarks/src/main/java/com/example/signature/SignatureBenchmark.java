@@ -0,0 +1,198 @@
+package com.example.signature;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of signing and verifying, each on its own, plus the two full paths. Images are
+ * synthetic, from a thumbnail to 50 MP, in every raster type the digest distinguishes; narrow
+ * the matrix with {@code -p}, e.g. {@code -p size=12MP -p type=INT_RGB}. JPEG stores neither
+ * alpha nor 16-bit samples, so for {@code jpg} those types are encoded as their 8-bit opaque
+ * equivalent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SignatureBenchmark {
+
+    @Param({"thumb", "1MP", "12MP", "50MP"})
+    public String size;
+
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "4BYTE_ABGR", "BYTE_GRAY", "USHORT_GRAY", "BYTE_BINARY", "BYTE_INDEXED"})
+    public String type;
+
+    @Param({"png", "jpg"})
+    public String format;
+
+    @Param({"RS256"})
+    public String algorithm;
+
+    private SignatureService service;
+    private CpuStage cpu;
+    private ImageFormat imageFormat;
+    private ByteBuffer image;
+    private ByteBuffer signed;
+    private String jws;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Sized to the machine so tileDigest can use every core
+        cpu = new CpuStage(0, 16, 1);
+        VerificationCache cache = new VerificationCache(0, 0);
+        MemoryBudget budget = new MemoryBudget(0, 268435456L, 65535, 2000, 1);
+        KeyRing keys = new KeyRing(SigningKeys.of(JwsKeys.generate(JwsKeys.parse(algorithm))), cache);
+        service = new SignatureService(keys, 268435456L, 33554432L, 64, cpu, budget, cache, new SigningLedger(),
+                new SignatureMetrics(new SimpleMeterRegistry(), cpu, cache, budget));
+
+        imageFormat = ImageFormat.fromName(format);
+        image = ByteBuffer.wrap(encode(synthetic(size, type), format));
+        SignedImage signedImage = service.sign(image, format);
+        signed = ByteBuffer.wrap(signedImage.toByteArray());
+        jws = format.equals("jpg") ? SignatureService.extractJwsJpeg(signed) : SignatureService.extractJwsPng(signed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cpu.destroy();
+    }
+
+    /** Decode plus single-pass pixel hash, as done for signatures without a digest scheme. */
+    @Benchmark
+    public byte[] digest() throws Exception {
+        return service.digest(new ImageContext(image, imageFormat));
+    }
+
+    /** Decode plus {@code merkle-v1} tile hashes and root, as done once per sign and per verify. */
+    @Benchmark
+    public byte[] tileDigest() throws Exception {
+        ImageContext context = new ImageContext(image, imageFormat);
+        return service.tileDigest(context, TileDigest.tileRows(64, context.height())).root();
+    }
+
+    /** Writing the JWS into the file ({@code embedJwsJpeg} or {@code embedJwsPng}). */
+    @Benchmark
+    public void embedJws() throws IOException {
+        if (imageFormat == ImageFormat.JPEG) {
+            SignatureService.embedJwsJpeg(image, jws, OutputStream.nullOutputStream());
+        } else {
+            SignatureService.embedJwsPng(image, jws, OutputStream.nullOutputStream());
+        }
+    }
+
+    /** Finding the JWS in a signed file ({@code extractJwsJpeg} or {@code extractJwsPng}). */
+    @Benchmark
+    public String extractJws() {
+        return imageFormat == ImageFormat.JPEG
+                ? SignatureService.extractJwsJpeg(signed)
+                : SignatureService.extractJwsPng(signed);
+    }
+
+    @Benchmark
+    public void sign() throws Exception {
+        service.sign(image, format).writeTo(OutputStream.nullOutputStream());
+    }
+
+    /** Uncached: the verification cache is disabled. */
+    @Benchmark
+    public boolean verify() throws Exception {
+        return service.verify(signed, format);
+    }
+
+    static BufferedImage synthetic(String size, String type) {
+        int width;
+        int height;
+        switch (size) {
+            case "thumb" -> { width = 160; height = 120; }
+            case "1MP" -> { width = 1280; height = 800; }
+            case "12MP" -> { width = 4000; height = 3000; }
+            case "50MP" -> { width = 8660; height = 5774; }
+            default -> throw new IllegalArgumentException("Unknown size " + size);
+        }
+        BufferedImage img = new BufferedImage(width, height, rasterType(type));
+        // Gradients with a little noise: compresses like a photo rather than like flat colour or static
+        Random random = new Random(42);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+                int b = ((x + y) * 255 / (width + height) + random.nextInt(16)) & 0xff;
+                row[x] = 0xc0000000 | (r << 16) | (g << 8) | b;
+            }
+            img.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return img;
+    }
+
+    // JPEG has neither alpha nor 16-bit samples: such rasters are written as their 8-bit opaque equivalent
+    private static BufferedImage jpegCompatible(BufferedImage img) {
+        int type = switch (img.getType()) {
+            case BufferedImage.TYPE_INT_ARGB -> BufferedImage.TYPE_INT_RGB;
+            case BufferedImage.TYPE_4BYTE_ABGR -> BufferedImage.TYPE_3BYTE_BGR;
+            case BufferedImage.TYPE_USHORT_GRAY -> BufferedImage.TYPE_BYTE_GRAY;
+            default -> img.getType();
+        };
+        if (type == img.getType()) {
+            return img;
+        }
+        BufferedImage copy = new BufferedImage(img.getWidth(), img.getHeight(), type);
+        copy.getGraphics().drawImage(img, 0, 0, null);
+        return copy;
+    }
+
+    private static int rasterType(String type) {
+        return switch (type) {
+            case "INT_RGB" -> BufferedImage.TYPE_INT_RGB;
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            case "4BYTE_ABGR" -> BufferedImage.TYPE_4BYTE_ABGR;
+            case "BYTE_GRAY" -> BufferedImage.TYPE_BYTE_GRAY;
+            case "USHORT_GRAY" -> BufferedImage.TYPE_USHORT_GRAY;
+            case "BYTE_BINARY" -> BufferedImage.TYPE_BYTE_BINARY;
+            case "BYTE_INDEXED" -> BufferedImage.TYPE_BYTE_INDEXED;
+            default -> throw new IllegalArgumentException("Unknown raster type " + type);
+        };
+    }
+
+    private static byte[] encode(BufferedImage img, String format) throws IOException {
+        if (format.equals("jpg")) {
+            img = jpegCompatible(img);
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(img, null, null), writer.getDefaultWriteParam());
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.signature;
+
+import com.nimbusds.jose.JWSAlgorithm;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup-to-first-request times of the backend in each startup configuration. Every run
+ * starts a fresh JVM, polls {@code /health} until it answers {@code 200}, then times one
+ * {@code POST /api/v1/sign} of a 1024x768 JPEG. Reports medians of {@code ready} (launch to
+ * healthy), {@code first sign} (that request alone) and {@code total} (launch to signed image).
+ * All runs sign with the same configured key, as a deployment would, so the time a generated
+ * RSA key takes (which varies widely) does not blur the comparison.
+ *
+ * <p>Needs the backend built with the {@code startup} profile. The AppCDS archive is
+ * recorded by a training run into {@code <target>/app.jsa} first, as the Dockerfile does.
+ *
+ * <pre>java -cp benchmarks/target/benchmarks.jar com.example.signature.StartupBenchmark [backend/target] [runs]</pre>
+ */
+public final class StartupBenchmark {
+
+    private record Mode(String name, Path jar, List<String> jvmArgs) {
+    }
+
+    private static final HttpClient HTTP = HttpClient.newHttpClient();
+
+    private static KeyPair keyPair;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path target = Path.of(args.length > 0 ? args[0] : "backend/target").toAbsolutePath();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path fat = target.resolve("backend-0.0.1-SNAPSHOT.jar");
+        Path thin = target.resolve("backend-0.0.1-SNAPSHOT-app.jar");
+        Path archive = target.resolve("app.jsa");
+        if (!Files.exists(thin)) {
+            throw new IllegalStateException(thin + " not found; build the backend with -Pstartup");
+        }
+
+        keyPair = JwsKeys.generate(JWSAlgorithm.RS256);
+        Files.deleteIfExists(archive);
+        int training = start(thin, List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true",
+                "-Dsignature.startup.exit-after-warmup=true"), 0).waitFor();
+        if (training != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("Training run failed with exit code " + training);
+        }
+
+        List<Mode> modes = List.of(
+                new Mode("jar, no warm-up", fat, List.of("-Dsignature.startup.warmup-iterations=0")),
+                new Mode("jar", fat, List.of()),
+                new Mode("aot", thin, List.of("-Dspring.aot.enabled=true")),
+                new Mode("aot + cds", thin, List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + archive)));
+        byte[] image = sample();
+
+        System.out.printf("Java %s, %d runs per mode, medians in ms%n", Runtime.version(), runs);
+        System.out.printf("%-18s %8s %11s %8s%n", "mode", "ready", "first sign", "total");
+        for (Mode mode : modes) {
+            long[] ready = new long[runs];
+            long[] first = new long[runs];
+            long[] total = new long[runs];
+            for (int r = 0; r < runs; r++) {
+                long[] times = measure(mode, image);
+                ready[r] = times[0];
+                first[r] = times[1];
+                total[r] = times[0] + times[1];
+            }
+            System.out.printf("%-18s %8d %11d %8d%n", mode.name(), median(ready), median(first), median(total));
+        }
+    }
+
+    // Launch to healthy, and the first sign request, in milliseconds
+    private static long[] measure(Mode mode, byte[] image) throws Exception {
+        int port = freePort();
+        long start = System.nanoTime();
+        Process process = start(mode.jar(), mode.jvmArgs(), port);
+        try {
+            URI health = URI.create("http://localhost:" + port + "/health");
+            while (status(health) != 200) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode.name() + ": backend exited with " + process.exitValue());
+                }
+                Thread.sleep(10);
+            }
+            long ready = System.nanoTime();
+            HttpResponse<byte[]> signed = HTTP.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/sign"))
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+            long done = System.nanoTime();
+            if (signed.statusCode() != 200) {
+                throw new IllegalStateException(mode.name() + ": sign returned " + signed.statusCode());
+            }
+            return new long[] {TimeUnit.NANOSECONDS.toMillis(ready - start), TimeUnit.NANOSECONDS.toMillis(done - ready)};
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static Process start(Path jar, List<String> jvmArgs, int port) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Dserver.port=" + port);
+        command.add("-jar");
+        command.add(jar.toString());
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectErrorStream(true);
+        builder.environment().put("SIGNING_PRIVATE_KEY", pem(keyPair.getPrivate()));
+        builder.environment().put("SIGNING_PUBLIC_KEY", pem(keyPair.getPublic()));
+        return builder.start();
+    }
+
+    private static String pem(Key key) {
+        return "-----BEGIN KEY-----\n" + Base64.getMimeEncoder().encodeToString(key.getEncoded()) + "\n-----END KEY-----\n";
+    }
+
+    private static int status(URI uri) throws Exception {
+        try {
+            return HTTP.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (ConnectException e) {
+            return -1;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static byte[] sample() throws IOException {
+        BufferedImage image = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(0);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}